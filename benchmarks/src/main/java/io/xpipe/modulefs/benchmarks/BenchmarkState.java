@@ -0,0 +1,53 @@
+package io.xpipe.modulefs.benchmarks;
+
+import io.xpipe.modulefs.ModuleFileSystem;
+import io.xpipe.modulefs.ModulePath;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.FileSystems;
+import java.util.Map;
+
+@State(Scope.Benchmark)
+public class BenchmarkState {
+
+    static final String MODULE = "io.xpipe.modulefs.benchmarks";
+    static final String PACKAGE_PATH = "io/xpipe/modulefs/benchmarks/";
+    static final String SMALL_RESOURCE = "small_resource.txt";
+    static final String LARGE_RESOURCE = "large_resource.bin";
+    static final String DEEP_TREE = "deep";
+
+    // Only affects module jars, the other environments always use their own backend
+    @Param({"default", "mapped"})
+    public String backend;
+
+    @Param({"false", "true"})
+    public boolean index;
+
+    ModuleFileSystem fs;
+    ModulePath smallResource;
+    ModulePath largeResource;
+    ModulePath deepTree;
+
+    Map<String, ?> getEnv() {
+        return Map.of("backend", backend, "index", index);
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        fs = (ModuleFileSystem) FileSystems.newFileSystem(URI.create("module:/" + MODULE), getEnv());
+        smallResource = fs.getPath(PACKAGE_PATH + SMALL_RESOURCE);
+        largeResource = fs.getPath(PACKAGE_PATH + LARGE_RESOURCE);
+        deepTree = fs.getPath(PACKAGE_PATH + DEEP_TREE);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        fs.close();
+    }
+}
@@ -0,0 +1,32 @@
+package io.xpipe.modulefs.benchmarks;
+
+import io.xpipe.modulefs.ModuleFileSystem;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class FileSystemBenchmarks {
+
+    private static final URI MODULE_URI = URI.create("module:/" + BenchmarkState.MODULE);
+    private static final URI RESOURCE_URI = URI.create(
+            "module:/" + BenchmarkState.MODULE + "/" + BenchmarkState.PACKAGE_PATH + BenchmarkState.SMALL_RESOURCE);
+
+    @Benchmark
+    public ModuleFileSystem newFileSystem(BenchmarkState state) throws IOException {
+        var fs = ModuleFileSystem.create(MODULE_URI.toString(), state.getEnv());
+        fs.close();
+        return fs;
+    }
+
+    @Benchmark
+    public Path getPathFromUri(BenchmarkState state) {
+        return state.fs.provider().getPath(RESOURCE_URI);
+    }
+}
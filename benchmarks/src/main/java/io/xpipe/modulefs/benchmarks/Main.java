@@ -0,0 +1,38 @@
+package io.xpipe.modulefs.benchmarks;
+
+import io.xpipe.modulefs.ModuleFileSystem;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class Main {
+
+    public static void main(String[] args) throws Exception {
+        try (var fs = ModuleFileSystem.create("module:/" + BenchmarkState.MODULE)) {
+            System.out.println("Running benchmarks with " + fs.getClass().getSimpleName());
+        }
+
+        var cli = new CommandLineOptions(args);
+        var builder = new OptionsBuilder().parent(cli);
+        if (cli.getIncludes().isEmpty()) {
+            builder.include(Main.class.getPackageName() + ".*");
+        }
+        // Forked JVMs are launched with a class path, so our module has to be added to their boot layer explicitly
+        var forkArgs = new ArrayList<String>();
+        var modulePath = System.getProperty("jdk.module.path");
+        if (modulePath != null) {
+            forkArgs.addAll(List.of("--module-path", modulePath));
+        }
+        forkArgs.addAll(List.of("--add-modules", BenchmarkState.MODULE));
+        forkArgs.addAll(cli.getJvmArgsPrepend().orElse(List.of()));
+        builder.jvmArgsPrepend(forkArgs.toArray(String[]::new));
+        if (cli.getProfilers().isEmpty()) {
+            builder.addProfiler(GCProfiler.class);
+        }
+        new Runner(builder.build()).run();
+    }
+}
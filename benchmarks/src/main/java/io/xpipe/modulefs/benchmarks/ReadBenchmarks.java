@@ -0,0 +1,40 @@
+package io.xpipe.modulefs.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ReadBenchmarks {
+
+    private static byte[] readBaseline(String name) throws IOException {
+        try (var in = ReadBenchmarks.class.getResourceAsStream(name)) {
+            return in.readAllBytes();
+        }
+    }
+
+    @Benchmark
+    public byte[] readSmall(BenchmarkState state) throws IOException {
+        return Files.readAllBytes(state.smallResource);
+    }
+
+    @Benchmark
+    public byte[] readSmallBaseline() throws IOException {
+        return readBaseline(BenchmarkState.SMALL_RESOURCE);
+    }
+
+    @Benchmark
+    public byte[] readLarge(BenchmarkState state) throws IOException {
+        return Files.readAllBytes(state.largeResource);
+    }
+
+    @Benchmark
+    public byte[] readLargeBaseline() throws IOException {
+        return readBaseline(BenchmarkState.LARGE_RESOURCE);
+    }
+}
@@ -0,0 +1,21 @@
+package io.xpipe.modulefs.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class WalkBenchmarks {
+
+    @Benchmark
+    public long walkDeepTree(BenchmarkState state) throws IOException {
+        try (var s = Files.walk(state.deepTree)) {
+            return s.count();
+        }
+    }
+}
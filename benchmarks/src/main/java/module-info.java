@@ -0,0 +1,8 @@
+open module io.xpipe.modulefs.benchmarks {
+    requires io.xpipe.modulefs;
+    requires jmh.core;
+
+    // Required by JMH, which can't declare them itself as an automatic module
+    requires jdk.unsupported;
+    requires java.management;
+}
@@ -0,0 +1,38 @@
+package io.xpipe.modulefs.gradle;
+
+import io.xpipe.modulefs.ModuleIndexWriter;
+import org.gradle.api.Action;
+import org.gradle.api.GradleException;
+import org.gradle.api.Plugin;
+import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.plugins.JavaPlugin;
+import org.gradle.jvm.tasks.Jar;
+
+import java.io.IOException;
+
+/**
+ * Writes a ModuleFS index into the jar of a module, so that module file systems don't have to scan it when opened.
+ */
+public class ModuleFsPlugin implements Plugin<Project> {
+
+    private static final class WriteIndex implements Action<Task> {
+
+        @Override
+        public void execute(Task task) {
+            var jar = ((Jar) task).getArchiveFile().get().getAsFile().toPath();
+            try {
+                ModuleIndexWriter.write(jar);
+            } catch (IOException e) {
+                throw new GradleException("Unable to write module index into " + jar, e);
+            }
+        }
+    }
+
+    @Override
+    public void apply(Project project) {
+        project.getPlugins().withType(JavaPlugin.class, p -> project.getTasks()
+                .named(JavaPlugin.JAR_TASK_NAME, Jar.class)
+                .configure(jar -> jar.doLast(new WriteIndex())));
+    }
+}
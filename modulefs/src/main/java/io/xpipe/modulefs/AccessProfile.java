@@ -0,0 +1,102 @@
+package io.xpipe.modulefs;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Records which files of a module are opened in which order.
+ * The profile file contains one module relative path per line, comment lines start with {@code #}.
+ */
+final class AccessProfile {
+
+    private static final String HEADER = "# modulefs access profile";
+
+    static Path getPath(Map<String, ?> env, String key) {
+        var value = env.get(key);
+        if (value instanceof Path) {
+            return (Path) value;
+        }
+        if (value instanceof String) {
+            return Path.of((String) value);
+        }
+        return null;
+    }
+
+    static List<String> read(Path file) throws IOException {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            // There is nothing to preload on the first launch
+            return List.of();
+        }
+
+        var entries = new ArrayList<String>(lines.size());
+        for (var line : lines) {
+            if (!line.isBlank() && !line.startsWith("#")) {
+                entries.add(line);
+            }
+        }
+        return entries;
+    }
+
+    private final Path file;
+    private final Set<String> seen = ConcurrentHashMap.newKeySet();
+    private final Queue<String> order = new ConcurrentLinkedQueue<>();
+    private final Thread hook = new Thread(this::writeOnExit, "modulefs-profile");
+
+    AccessProfile(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Also writes the profile when the JVM exits, as file systems of applications are often never closed.
+     */
+    void start() {
+        Runtime.getRuntime().addShutdownHook(hook);
+    }
+
+    void close() throws IOException {
+        try {
+            Runtime.getRuntime().removeShutdownHook(hook);
+        } catch (IllegalStateException e) {
+            // The JVM is already exiting, writing the profile twice does no harm
+        }
+        write();
+    }
+
+    private void writeOnExit() {
+        try {
+            write();
+        } catch (IOException ignored) {
+            // There is nobody left to report this to
+        }
+    }
+
+    void record(ModulePath target) {
+        var name = target.toRelativeString();
+        if (seen.add(name)) {
+            order.add(name);
+        }
+    }
+
+    synchronized void write() throws IOException {
+        var lines = new ArrayList<String>(order.size() + 1);
+        lines.add(HEADER);
+        lines.addAll(order);
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        Files.write(file, lines, StandardCharsets.UTF_8);
+    }
+}
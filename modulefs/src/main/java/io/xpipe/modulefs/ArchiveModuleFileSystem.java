@@ -0,0 +1,159 @@
+package io.xpipe.modulefs;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.UserPrincipalLookupService;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A module jar that is read from a mapped {@link JarArchive} without any file system that backs its entries.
+ * Paths and attributes are answered by the index, which is either stored in the jar or built from the central directory.
+ */
+abstract class ArchiveModuleFileSystem extends ModuleFileSystem {
+
+    private final Path file;
+
+    ArchiveModuleFileSystem(String module, Path file, ModuleFileSystemProvider provider) {
+        super(module, null, provider);
+        this.file = file;
+    }
+
+    abstract JarArchive getArchive();
+
+    private JarArchive.Entry getEntry(ModulePath path) throws IOException {
+        var entry = getArchive().getFileEntry(getIndex(), resolveEntry(path));
+        if (entry.isEmpty()) {
+            super.checkAccess(path);
+            throw new FileSystemException(path.toString(), null, "Is a directory");
+        }
+        return entry.get();
+    }
+
+    @Override
+    void initialize(Map<String, ?> env) throws IOException {
+        super.initialize(env);
+        // Without a backing file system, the index is always required
+        if (getIndex() == null) {
+            setIndex(createIndex());
+        }
+    }
+
+    @Override
+    ModuleIndex loadIndex() throws IOException {
+        return getArchive().readIndex();
+    }
+
+    @Override
+    ModuleIndex createIndex() throws IOException {
+        return getArchive().createIndex();
+    }
+
+    @Override
+    <A extends BasicFileAttributes> A readAttributes(ModulePath path, Class<A> type, LinkOption... options) throws IOException {
+        if (type != BasicFileAttributes.class) {
+            throw new UnsupportedOperationException("Jar archives only support basic attributes");
+        }
+        return super.readAttributes(path, type, options);
+    }
+
+    @Override
+    void checkAccess(ModulePath path, AccessMode... modes) throws IOException {
+        super.checkAccess(path);
+        if (Arrays.stream(modes).anyMatch(m -> m != AccessMode.READ)) {
+            throw new AccessDeniedException(path.toString());
+        }
+    }
+
+    @Override
+    ModulePath toRealPath(ModulePath path, LinkOption... options) throws IOException {
+        // Jars can't contain links
+        super.checkAccess(path);
+        return resolveTarget(path);
+    }
+
+    @Override
+    SeekableByteChannel openChannel(ModulePath path, Set<? extends OpenOption> options, FileAttribute<?>... attrs) throws IOException {
+        return getArchive().newChannel(getEntry(path));
+    }
+
+    @Override
+    FileChannel openFileChannel(ModulePath path, Set<? extends OpenOption> options, FileAttribute<?>... attrs) throws IOException {
+        return getArchive().newFileChannel(getEntry(path));
+    }
+
+    @Override
+    long transferTo(ModulePath path, FileChannel target) throws IOException {
+        var entry = getEntry(path);
+        if (!entry.isStored()) {
+            return super.transferTo(path, target);
+        }
+
+        // Stored entries can be written straight from the mapped archive
+        var data = getArchive().getRawData(entry);
+        long written = 0;
+        while (data.hasRemaining()) {
+            written += target.write(data);
+        }
+        return written;
+    }
+
+    @Override
+    Path toTargetPath(ModulePath path) {
+        throw new UnsupportedOperationException("Entries of jar archives are not backed by a file system");
+    }
+
+    @Override
+    Path toWrappedPath(ModulePath path) {
+        throw new UnsupportedOperationException("Entries of jar archives are not backed by a file system");
+    }
+
+    @Override
+    String getBackendSeparator() {
+        return "/";
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
+
+    @Override
+    public Iterable<FileStore> getFileStores() {
+        try {
+            return List.of(new ModuleFileStore(Files.getFileStore(file), this));
+        } catch (IOException e) {
+            return List.of();
+        }
+    }
+
+    @Override
+    public Set<String> supportedFileAttributeViews() {
+        return Set.of("basic");
+    }
+
+    @Override
+    public PathMatcher getPathMatcher(String syntaxAndPattern) {
+        var colon = syntaxAndPattern.indexOf(':');
+        if (colon > 0 && syntaxAndPattern.substring(0, colon).equalsIgnoreCase("glob")) {
+            return super.getPathMatcher(syntaxAndPattern);
+        }
+        return FileSystems.getDefault().getPathMatcher(syntaxAndPattern);
+    }
+
+    @Override
+    public UserPrincipalLookupService getUserPrincipalLookupService() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public WatchService newWatchService() {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,110 @@
+package io.xpipe.modulefs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A read-only file channel over the contents of a resource that are held in a buffer.
+ * Only buffers that are part of a mapped file can be mapped, e.g. stored entries of a mapped jar.
+ */
+final class BufferFileChannel extends ReadOnlyFileChannel {
+
+    private final ByteBuffer buffer;
+    private long position;
+
+    BufferFileChannel(ByteBuffer buffer) {
+        this.buffer = buffer.isReadOnly() ? buffer : buffer.asReadOnlyBuffer();
+    }
+
+    private ByteBuffer region(long position, int max) {
+        int n = (int) Math.min(max, buffer.limit() - position);
+        return buffer.slice((int) position, n);
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer dst) throws IOException {
+        int n = read(dst, position);
+        if (n > 0) {
+            position += n;
+        }
+        return n;
+    }
+
+    @Override
+    public int read(ByteBuffer dst, long position) throws IOException {
+        ensureOpen();
+        if (position < 0) {
+            throw new IllegalArgumentException("Negative position");
+        }
+        if (position >= buffer.limit()) {
+            return -1;
+        }
+
+        var region = region(position, dst.remaining());
+        dst.put(region);
+        return region.capacity();
+    }
+
+    @Override
+    public synchronized long position() throws IOException {
+        ensureOpen();
+        return position;
+    }
+
+    @Override
+    public synchronized FileChannel position(long newPosition) throws IOException {
+        ensureOpen();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Negative position");
+        }
+        position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        ensureOpen();
+        return buffer.limit();
+    }
+
+    @Override
+    public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+        ensureOpen();
+        if (position < 0 || count < 0) {
+            throw new IllegalArgumentException("Negative position or count");
+        }
+        if (position >= buffer.limit()) {
+            return 0;
+        }
+
+        var region = region(position, (int) Math.min(count, Integer.MAX_VALUE));
+        long written = 0;
+        while (region.hasRemaining()) {
+            written += target.write(region);
+        }
+        return written;
+    }
+
+    @Override
+    public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+        ensureOpen();
+        if (mode != MapMode.READ_ONLY) {
+            throw new NonWritableChannelException();
+        }
+        if (position < 0 || size < 0 || position + size > buffer.limit()) {
+            throw new IllegalArgumentException("Region exceeds the file size of " + buffer.limit());
+        }
+        if (!(buffer instanceof MappedByteBuffer)) {
+            throw new UnsupportedOperationException("The file contents are not part of a mapped file");
+        }
+        return ((MappedByteBuffer) buffer).slice((int) position, (int) size);
+    }
+
+    @Override
+    protected void implCloseChannel() {
+    }
+}
@@ -0,0 +1,137 @@
+package io.xpipe.modulefs;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.UserPrincipalLookupService;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * A read-only file system whose files are provided by other module file systems, which are opened on demand.
+ */
+abstract class DelegatingModuleFileSystem extends ModuleFileSystem {
+
+    DelegatingModuleFileSystem(String module, ModuleFileSystemProvider provider) {
+        super(module, null, provider);
+    }
+
+    /**
+     * Returns the path of a backend file system that provides a path, opening the backend if required.
+     */
+    abstract ModulePath toBackendPath(ModulePath path) throws IOException;
+
+    @Override
+    ModuleIndex loadIndex() {
+        return null;
+    }
+
+    @Override
+    ModuleIndex createIndex() {
+        return null;
+    }
+
+    @Override
+    <A extends BasicFileAttributes> A readAttributes(ModulePath path, Class<A> type, LinkOption... options) throws IOException {
+        var p = toBackendPath(path);
+        return p.getModuleFileSystem().readAttributes(p, type, options);
+    }
+
+    @Override
+    long getContentStamp(ModulePath path) throws IOException {
+        var p = toBackendPath(path);
+        return p.getModuleFileSystem().getContentStamp(p);
+    }
+
+    @Override
+    SeekableByteChannel openChannel(ModulePath path, Set<? extends OpenOption> options, FileAttribute<?>... attrs) throws IOException {
+        var p = toBackendPath(path);
+        return p.getModuleFileSystem().openChannel(p, options, attrs);
+    }
+
+    @Override
+    FileChannel openFileChannel(ModulePath path, Set<? extends OpenOption> options, FileAttribute<?>... attrs) throws IOException {
+        var p = toBackendPath(path);
+        return p.getModuleFileSystem().openFileChannel(p, options, attrs);
+    }
+
+    @Override
+    AsynchronousFileChannel newAsynchronousFileChannel(
+            ModulePath path, Set<? extends OpenOption> options, ExecutorService executor, FileAttribute<?>... attrs) throws IOException {
+        var p = toBackendPath(path);
+        return p.getModuleFileSystem().newAsynchronousFileChannel(p, options, executor != null ? executor : getAsyncExecutor(), attrs);
+    }
+
+    @Override
+    OptionalLong getCrc(ModulePath path) throws IOException {
+        var p = toBackendPath(path);
+        return p.getModuleFileSystem().getCrc(p);
+    }
+
+    @Override
+    long transferTo(ModulePath path, FileChannel target) throws IOException {
+        var p = toBackendPath(path);
+        return p.getModuleFileSystem().transferTo(p, target);
+    }
+
+    @Override
+    Path toTargetPath(ModulePath path) throws IOException {
+        var p = toBackendPath(path);
+        return p.getModuleFileSystem().toTargetPath(p);
+    }
+
+    @Override
+    Path toWrappedPath(ModulePath path) {
+        try {
+            return toBackendPath(path).getWrappedPath();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    FileStore getFileStore(ModulePath path) throws IOException {
+        var p = toBackendPath(path);
+        return p.getModuleFileSystem().getFileStore(p);
+    }
+
+    @Override
+    String getBackendSeparator() {
+        return "/";
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
+
+    @Override
+    public Set<String> supportedFileAttributeViews() {
+        return Set.of("basic");
+    }
+
+    @Override
+    public PathMatcher getPathMatcher(String syntaxAndPattern) {
+        var colon = syntaxAndPattern.indexOf(':');
+        if (colon > 0 && syntaxAndPattern.substring(0, colon).equalsIgnoreCase("glob")) {
+            return super.getPathMatcher(syntaxAndPattern);
+        }
+        return FileSystems.getDefault().getPathMatcher(syntaxAndPattern);
+    }
+
+    @Override
+    public UserPrincipalLookupService getUserPrincipalLookupService() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public WatchService newWatchService() {
+        throw new UnsupportedOperationException();
+    }
+}
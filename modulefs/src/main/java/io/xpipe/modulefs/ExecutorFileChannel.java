@@ -0,0 +1,174 @@
+package io.xpipe.modulefs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A read-only asynchronous file channel for backends without native asynchronous I/O.
+ * Reads are performed on an executor, either as positional reads of a file channel or by positioning a blocking channel.
+ * Like {@link ReadOnlyFileChannel}, shared locks are always granted without locking anything.
+ */
+final class ExecutorFileChannel extends AsynchronousFileChannel {
+
+    private static final class SharedLock extends FileLock {
+
+        private volatile boolean valid = true;
+
+        private SharedLock(AsynchronousFileChannel channel, long position, long size) {
+            super(channel, position, size, true);
+        }
+
+        @Override
+        public boolean isValid() {
+            return valid && acquiredBy().isOpen();
+        }
+
+        @Override
+        public void release() throws IOException {
+            if (!acquiredBy().isOpen()) {
+                throw new ClosedChannelException();
+            }
+            valid = false;
+        }
+    }
+
+    private static final class DefaultExecutor {
+
+        private static final ExecutorService INSTANCE = Threads.newVirtualThreadExecutor("modulefs-async");
+    }
+
+    /**
+     * Returns the executor that is used if neither the caller nor the file system specify one.
+     * Virtual threads are used if available, as reads only block on I/O.
+     */
+    static ExecutorService getDefaultExecutor() {
+        return DefaultExecutor.INSTANCE;
+    }
+
+    private final SeekableByteChannel channel;
+    private final ExecutorService executor;
+    // A lock instead of a monitor, so that virtual threads don't pin their carrier while reading
+    private final ReentrantLock positionLock = new ReentrantLock();
+
+    ExecutorFileChannel(SeekableByteChannel channel, ExecutorService executor) {
+        this.channel = channel;
+        this.executor = executor;
+    }
+
+    private int readAt(ByteBuffer dst, long position) throws IOException {
+        if (position < 0) {
+            throw new IllegalArgumentException("Negative position");
+        }
+
+        if (channel instanceof FileChannel) {
+            return ((FileChannel) channel).read(dst, position);
+        }
+
+        positionLock.lock();
+        try {
+            channel.position(position);
+            return channel.read(dst);
+        } finally {
+            positionLock.unlock();
+        }
+    }
+
+    @Override
+    public long size() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    public AsynchronousFileChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public void force(boolean metaData) {
+    }
+
+    @Override
+    public <A> void lock(long position, long size, boolean shared, A attachment, CompletionHandler<FileLock, ? super A> handler) {
+        FileLock lock;
+        try {
+            lock = tryLock(position, size, shared);
+        } catch (IOException e) {
+            handler.failed(e, attachment);
+            return;
+        }
+        handler.completed(lock, attachment);
+    }
+
+    @Override
+    public Future<FileLock> lock(long position, long size, boolean shared) {
+        try {
+            return CompletableFuture.completedFuture(tryLock(position, size, shared));
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @Override
+    public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+        if (!isOpen()) {
+            throw new ClosedChannelException();
+        }
+        if (!shared) {
+            throw new NonWritableChannelException();
+        }
+        if (position < 0 || size < 0) {
+            throw new IllegalArgumentException("Negative position or size");
+        }
+        return new SharedLock(this, position, size);
+    }
+
+    @Override
+    public <A> void read(ByteBuffer dst, long position, A attachment, CompletionHandler<Integer, ? super A> handler) {
+        executor.execute(() -> {
+            int read;
+            try {
+                read = readAt(dst, position);
+            } catch (Throwable t) {
+                handler.failed(t, attachment);
+                return;
+            }
+            handler.completed(read, attachment);
+        });
+    }
+
+    @Override
+    public Future<Integer> read(ByteBuffer dst, long position) {
+        return executor.submit(() -> readAt(dst, position));
+    }
+
+    @Override
+    public <A> void write(ByteBuffer src, long position, A attachment, CompletionHandler<Integer, ? super A> handler) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public Future<Integer> write(ByteBuffer src, long position) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
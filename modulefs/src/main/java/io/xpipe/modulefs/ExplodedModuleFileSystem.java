@@ -1,14 +1,23 @@
 package io.xpipe.modulefs;
 
 import java.io.IOException;
+import java.lang.ref.WeakReference;
 import java.net.URI;
-import java.nio.file.Path;
-import java.nio.file.spi.FileSystemProvider;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileAttribute;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class ExplodedModuleFileSystem extends ModuleFileSystem {
 
-    static Optional<ExplodedModuleFileSystem> create(String module, FileSystemProvider provider, URI location) throws IOException {
+    static Optional<ExplodedModuleFileSystem> create(String module, ModuleFileSystemProvider provider, URI location) throws IOException {
         if (location.getScheme().equals("file")) {
             var basePath = Path.of(location);
             return Optional.of(new ExplodedModuleFileSystem(module, basePath, provider));
@@ -16,19 +25,155 @@ public class ExplodedModuleFileSystem extends ModuleFileSystem {
         return Optional.empty();
     }
 
-    private boolean open = true;
+    private final AtomicLong changes = new AtomicLong();
+    private final Map<ModulePath, Long> versions = new ConcurrentHashMap<>();
+    private volatile long overflowVersion;
+    private ModuleWatcher watcher;
+    private volatile boolean watching;
+    // Only accessed by the watcher thread
+    private ModuleIndex.Builder indexBuilder;
 
-    ExplodedModuleFileSystem(String module, Path basePath, FileSystemProvider provider) {
+    ExplodedModuleFileSystem(String module, Path basePath, ModuleFileSystemProvider provider) {
         super(module, basePath, provider);
     }
 
     @Override
-    public void close() throws IOException {
-        open = false;
+    void initialize(Map<String, ?> env) throws IOException {
+        super.initialize(env);
+        if (isEnabled(env, "watch")) {
+            var index = getIndex();
+            indexBuilder = index != null ? index.toBuilder() : null;
+            watcher = new ModuleWatcher(basePath, getLong(env, "watch.debounceMillis", 100), listener(this));
+            watching = true;
+            track(watcher);
+        }
+    }
+
+    private static ModuleWatcher.Listener listener(ExplodedModuleFileSystem fs) {
+        // The watcher thread must not keep the file system reachable, so that it can still be reclaimed if it is never closed
+        var ref = new WeakReference<>(fs);
+        return new ModuleWatcher.Listener() {
+            @Override
+            public void onChanges(Set<Path> changed, boolean overflow) {
+                var f = ref.get();
+                if (f != null) {
+                    f.onChanges(changed, overflow);
+                }
+            }
+
+            @Override
+            public void onFailure(RuntimeException e) {
+                var f = ref.get();
+                if (f != null) {
+                    f.stopWatching();
+                }
+            }
+        };
+    }
+
+    /**
+     * Falls back to checking the files themselves once changes can't be tracked anymore.
+     */
+    private void stopWatching() {
+        watching = false;
+        indexBuilder = null;
+        setIndex(null);
+    }
+
+    /**
+     * Only updates the changed entries of the index and the content cache.
+     * If events were lost, the index is created again and all cached contents become stale.
+     */
+    private void onChanges(Set<Path> changed, boolean overflow) {
+        var version = changes.incrementAndGet();
+        if (overflow) {
+            overflowVersion = version;
+        }
+        for (var p : changed) {
+            var path = resolveTarget(fromWrappedPath(p));
+            versions.put(path, version);
+            invalidate(path);
+        }
+
+        if (indexBuilder == null) {
+            return;
+        }
+        try {
+            if (overflow) {
+                var index = createIndex();
+                indexBuilder = index.toBuilder();
+                setIndex(index);
+                return;
+            }
+
+            var index = getIndex();
+            for (var p : changed) {
+                updateIndex(index, p);
+            }
+            setIndex(indexBuilder.build());
+        } catch (IOException e) {
+            // Without a consistent index, the file system falls back to the files themselves
+            indexBuilder = null;
+            setIndex(null);
+        }
+    }
+
+    private void updateIndex(ModuleIndex index, Path p) throws IOException {
+        if (p.equals(basePath.resolve(ModuleIndexWriter.LOCATION))) {
+            return;
+        }
+
+        var segments = ModuleIndex.Builder.segments(basePath, p);
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(p, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (NoSuchFileException e) {
+            indexBuilder.remove(segments);
+            return;
+        }
+
+        // Directories that were not known before have to be added with all of their contents
+        var entry = index.find(segments);
+        if (attrs.isDirectory() && (entry == -1 || !index.isDirectory(entry))) {
+            indexBuilder.scan(basePath, p, false);
+        } else {
+            indexBuilder.add(basePath, p, attrs, false);
+        }
     }
 
     @Override
-    public boolean isOpen() {
-        return open;
+    long getContentStamp(ModulePath path) throws IOException {
+        // Watched files don't have to be checked, their stamp only changes once a change was reported
+        if (watching) {
+            return Math.max(versions.getOrDefault(resolveTarget(path), 0L), overflowVersion);
+        }
+        return Files.getLastModifiedTime(path.getTargetPath()).toMillis();
+    }
+
+    @Override
+    FileChannel openFileChannel(ModulePath path, Set<? extends OpenOption> options, FileAttribute<?>... attrs) throws IOException {
+        return getBaseProvider().newFileChannel(path.getTargetPath(), options, attrs);
+    }
+
+    @Override
+    AsynchronousFileChannel newAsynchronousFileChannel(
+            ModulePath path, Set<? extends OpenOption> options, ExecutorService executor, FileAttribute<?>... attrs) throws IOException {
+        // Without an executor, native channels use the default thread pool of the platform
+        var e = executor != null ? executor : getAsyncExecutor();
+        var channel = AsynchronousFileChannel.open(path.getTargetPath(), options, e, attrs);
+        recordAccess(path);
+        return channel;
+    }
+
+    @Override
+    String getBackendName() {
+        return "exploded";
+    }
+
+    @Override
+    void closeBackend() throws IOException {
+        if (watcher != null) {
+            watcher.close();
+        }
     }
 }
@@ -0,0 +1,19 @@
+package io.xpipe.modulefs;
+
+import java.nio.file.Path;
+
+/**
+ * Receives progress updates of an extraction. As files are extracted concurrently,
+ * implementations have to be thread-safe.
+ */
+@FunctionalInterface
+public interface ExtractionListener {
+
+    /**
+     * Called once a file has been handled.
+     *
+     * @param size the size of the file in bytes
+     * @param skipped whether the file was not copied as the target already had the same contents
+     */
+    void onFileExtracted(Path source, Path target, long size, boolean skipped);
+}
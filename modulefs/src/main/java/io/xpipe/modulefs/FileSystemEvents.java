@@ -0,0 +1,28 @@
+package io.xpipe.modulefs;
+
+/**
+ * Emits Flight Recorder events for file system operations if the jdk.jfr module is available.
+ * The event classes are only loaded once it is known that they can be linked.
+ */
+final class FileSystemEvents {
+
+    private static final boolean AVAILABLE = isAvailable();
+
+    private static boolean isAvailable() {
+        var module = FileSystemEvents.class.getModule();
+        return ModuleLayer.boot().findModule("jdk.jfr").map(module::canRead).orElse(false);
+    }
+
+    /**
+     * Begins an event and returns it, or null if no event is recorded.
+     */
+    static Object begin(FileSystemStats.Operation operation) {
+        return AVAILABLE ? JfrEvents.begin(operation) : null;
+    }
+
+    static void commit(Object event, String module, String backend, String path) {
+        if (event != null) {
+            JfrEvents.commit(event, module, backend, path);
+        }
+    }
+}
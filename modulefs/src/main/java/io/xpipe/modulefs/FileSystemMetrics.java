@@ -0,0 +1,71 @@
+package io.xpipe.modulefs;
+
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the latencies of file system operations with a few contention-free counters per operation.
+ */
+final class FileSystemMetrics {
+
+    private static final class Recorder {
+
+        private final AtomicLongArray buckets = new AtomicLongArray(LatencyHistogram.BUCKETS);
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        private void record(long nanos) {
+            buckets.incrementAndGet(LatencyHistogram.bucket(nanos));
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+
+        private LatencyHistogram snapshot() {
+            var counts = new long[LatencyHistogram.BUCKETS];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = buckets.get(i);
+            }
+            return new LatencyHistogram(counts, totalNanos.sum(), maxNanos.get());
+        }
+    }
+
+    private final EnumMap<FileSystemStats.Operation, Recorder> recorders = new EnumMap<>(FileSystemStats.Operation.class);
+    private final ConcurrentHashMap<String, LongAdder> readNanos = new ConcurrentHashMap<>();
+
+    FileSystemMetrics() {
+        for (var operation : FileSystemStats.Operation.values()) {
+            recorders.put(operation, new Recorder());
+        }
+    }
+
+    void record(FileSystemStats.Operation operation, long nanos) {
+        recorders.get(operation).record(nanos);
+    }
+
+    void recordRead(String path, long nanos) {
+        record(FileSystemStats.Operation.READ, nanos);
+        var adder = readNanos.get(path);
+        if (adder == null) {
+            adder = readNanos.computeIfAbsent(path, k -> new LongAdder());
+        }
+        adder.add(nanos);
+    }
+
+    FileSystemStats snapshot(String module, String backend) {
+        var latencies = new EnumMap<FileSystemStats.Operation, LatencyHistogram>(FileSystemStats.Operation.class);
+        recorders.forEach((operation, recorder) -> latencies.put(operation, recorder.snapshot()));
+
+        var reads = new LinkedHashMap<String, Long>();
+        readNanos.entrySet().stream()
+                .map(e -> Map.entry(e.getKey(), e.getValue().sum()))
+                .sorted(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()))
+                .forEach(e -> reads.put(e.getKey(), e.getValue()));
+        return new FileSystemStats(module, backend, latencies, reads);
+    }
+}
@@ -0,0 +1,70 @@
+package io.xpipe.modulefs;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * A snapshot of the operations that were performed on a module file system since it was opened.
+ */
+public final class FileSystemStats {
+
+    public enum Operation {
+        /**
+         * Resolving the module in its layer.
+         */
+        RESOLVE,
+        /**
+         * Opening the file system, including reading or building an index.
+         */
+        OPEN,
+        /**
+         * Opening a channel to read a file.
+         */
+        READ,
+        /**
+         * Opening a directory stream.
+         */
+        LIST
+    }
+
+    private final String module;
+    private final String backend;
+    private final Map<Operation, LatencyHistogram> latencies;
+    private final Map<String, Long> readNanos;
+
+    FileSystemStats(String module, String backend, EnumMap<Operation, LatencyHistogram> latencies, Map<String, Long> readNanos) {
+        this.module = module;
+        this.backend = backend;
+        this.latencies = Collections.unmodifiableMap(latencies);
+        this.readNanos = Collections.unmodifiableMap(readNanos);
+    }
+
+    public String getModule() {
+        return module;
+    }
+
+    public String getBackend() {
+        return backend;
+    }
+
+    public LatencyHistogram getLatencies(Operation operation) {
+        return latencies.get(operation);
+    }
+
+    public long getCount(Operation operation) {
+        return latencies.get(operation).getCount();
+    }
+
+    /**
+     * Returns the total time spent opening each file for reading in nanoseconds, with the most expensive files first.
+     */
+    public Map<String, Long> getReadNanos() {
+        return readNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "FileSystemStats{module=" + module + ", backend=" + backend + ", latencies=" + latencies + "}";
+    }
+}
@@ -0,0 +1,59 @@
+package io.xpipe.modulefs;
+
+/**
+ * A count-min sketch with 4-bit counters that estimates how often keys have been accessed.
+ * All counters are periodically halved so that the estimates favor recent accesses.
+ */
+final class FrequencySketch {
+
+    private static final int[] SEEDS = {0x97cb3127, 0xbf58476d, 0x94d049bb, 0x2545f491};
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private final long[] table;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(int expectedEntries) {
+        int length = Integer.highestOneBit(Math.max(64, Math.min(expectedEntries, 1 << 24)) - 1) << 1;
+        this.table = new long[length];
+        this.mask = length - 1;
+        this.sampleSize = 10 * length;
+    }
+
+    private static int hash(int item, int depth) {
+        int h = (item + SEEDS[depth]) * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    int frequency(int item) {
+        int min = 15;
+        for (int i = 0; i < 4; i++) {
+            int h = hash(item, i);
+            long slot = table[(h >>> 4) & mask];
+            int count = (int) ((slot >>> ((h & 15) << 2)) & 0xF);
+            min = Math.min(min, count);
+        }
+        return min;
+    }
+
+    void increment(int item) {
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            int h = hash(item, i);
+            int index = (h >>> 4) & mask;
+            int offset = (h & 15) << 2;
+            if (((table[index] >>> offset) & 0xF) != 15) {
+                table[index] += 1L << offset;
+                added = true;
+            }
+        }
+
+        if (added && ++additions >= sampleSize) {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (table[i] >>> 1) & RESET_MASK;
+            }
+            additions /= 2;
+        }
+    }
+}
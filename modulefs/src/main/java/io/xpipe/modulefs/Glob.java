@@ -0,0 +1,259 @@
+package io.xpipe.modulefs;
+
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A glob pattern with the same syntax as {@link java.nio.file.FileSystem#getPathMatcher(String)},
+ * compiled into one matcher per name segment so that it can be matched against path segments while descending a tree.
+ * As with the standard glob syntax, a {@code **} segment matches one or more names.
+ * Patterns that use {@code **} within a segment can't be matched segment by segment and fall back to matching whole paths.
+ * Paths of module file systems are absolute by default, so relative patterns match absolute paths relative to their root.
+ */
+final class Glob implements PathMatcher {
+
+    private static final String META = "*?[{\\";
+
+    static Glob compile(String glob) {
+        var absolute = glob.startsWith("/");
+        var parts = split(absolute ? glob.substring(1) : glob);
+        var segments = new ArrayList<Segment>(parts.size());
+        for (var part : parts) {
+            if (part.equals("**")) {
+                segments.add(Segment.ANY);
+            } else if (part.contains("**") || part.isEmpty()) {
+                return new Glob(glob, absolute, null, Pattern.compile(toRegex(glob, true)));
+            } else if (isLiteral(part)) {
+                segments.add(new Segment(unescape(part), null));
+            } else {
+                segments.add(new Segment(null, Pattern.compile(toRegex(part, false))));
+            }
+        }
+        return new Glob(glob, absolute, segments, null);
+    }
+
+    private static List<String> split(String glob) {
+        var parts = new ArrayList<String>();
+        int start = 0;
+        int depth = 0;
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[' || c == '{') {
+                depth++;
+            } else if ((c == ']' || c == '}') && depth > 0) {
+                depth--;
+            } else if (c == '/' && depth == 0) {
+                parts.add(glob.substring(start, i));
+                start = i + 1;
+            }
+        }
+        parts.add(glob.substring(start));
+        return parts;
+    }
+
+    private static boolean isLiteral(String part) {
+        for (int i = 0; i < part.length(); i++) {
+            char c = part.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (META.indexOf(c) != -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String unescape(String part) {
+        var sb = new StringBuilder(part.length());
+        for (int i = 0; i < part.length(); i++) {
+            char c = part.charAt(i);
+            if (c == '\\' && i + 1 < part.length()) {
+                c = part.charAt(++i);
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    private static String toRegex(String glob, boolean crossSegments) {
+        var sb = new StringBuilder("^");
+        var inGroup = false;
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            switch (c) {
+                case '\\':
+                    if (++i == glob.length()) {
+                        throw new PatternSyntaxException("No character to escape", glob, i - 1);
+                    }
+                    sb.append(Pattern.quote(String.valueOf(glob.charAt(i))));
+                    break;
+                case '*':
+                    if (crossSegments && i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                        sb.append(".*");
+                        i++;
+                    } else {
+                        sb.append("[^/]*");
+                    }
+                    break;
+                case '?':
+                    sb.append("[^/]");
+                    break;
+                case '[':
+                    int end = glob.indexOf(']', i + 2);
+                    if (end == -1) {
+                        throw new PatternSyntaxException("Missing ']'", glob, i);
+                    }
+                    var content = glob.substring(i + 1, end);
+                    if (content.startsWith("!")) {
+                        content = "^" + content.substring(1);
+                    }
+                    sb.append("[[^/]&&[").append(content.replace("\\", "\\\\").replace("[", "\\[")).append("]]");
+                    i = end;
+                    break;
+                case '{':
+                    if (inGroup) {
+                        throw new PatternSyntaxException("Cannot nest groups", glob, i);
+                    }
+                    sb.append("(?:");
+                    inGroup = true;
+                    break;
+                case '}':
+                    sb.append(inGroup ? ")" : "\\}");
+                    inGroup = false;
+                    break;
+                case ',':
+                    sb.append(inGroup ? "|" : ",");
+                    break;
+                default:
+                    sb.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        if (inGroup) {
+            throw new PatternSyntaxException("Missing '}'", glob, glob.length() - 1);
+        }
+        return sb.append('$').toString();
+    }
+
+    static final class Segment {
+
+        static final Segment ANY = new Segment(null, null);
+
+        private final String literal;
+        private final Pattern pattern;
+
+        private Segment(String literal, Pattern pattern) {
+            this.literal = literal;
+            this.pattern = pattern;
+        }
+
+        boolean matches(String name) {
+            if (this == ANY) {
+                return true;
+            }
+            return literal != null ? literal.equals(name) : pattern.matcher(name).matches();
+        }
+
+        /**
+         * Returns the name this segment matches if it matches exactly one name.
+         */
+        String getLiteral() {
+            return literal;
+        }
+    }
+
+    private final String glob;
+    private final boolean absolute;
+    private final List<Segment> segments;
+    private final Pattern pattern;
+
+    private Glob(String glob, boolean absolute, List<Segment> segments, Pattern pattern) {
+        this.glob = glob;
+        this.absolute = absolute;
+        this.segments = segments;
+        this.pattern = pattern;
+    }
+
+    /**
+     * Returns whether the pattern can be matched segment by segment.
+     */
+    boolean isSegmented() {
+        return segments != null;
+    }
+
+    int getSegmentCount() {
+        return segments.size();
+    }
+
+    Segment getSegment(int index) {
+        return segments.get(index);
+    }
+
+    /**
+     * Returns the states that are reached by matching a name in the given states.
+     * A state is the index of the next segment to match, so a state equal to the segment count is a complete match.
+     */
+    BitSet advance(BitSet states, String name) {
+        var next = new BitSet(segments.size() + 1);
+        for (int i = states.nextSetBit(0); i >= 0 && i < segments.size(); i = states.nextSetBit(i + 1)) {
+            var segment = segments.get(i);
+            if (!segment.matches(name)) {
+                continue;
+            }
+            next.set(i + 1);
+            if (segment == Segment.ANY) {
+                next.set(i);
+            }
+        }
+        return next;
+    }
+
+    boolean isComplete(BitSet states) {
+        return states.get(segments.size());
+    }
+
+    boolean isAbsolute() {
+        return absolute;
+    }
+
+    boolean matchesRelative(String relative) {
+        return pattern.matcher(relative).matches();
+    }
+
+    @Override
+    public boolean matches(Path path) {
+        if (absolute && !path.isAbsolute()) {
+            return false;
+        }
+        if (!isSegmented()) {
+            var relative = !absolute && path.isAbsolute();
+            var s = relative ? path.getRoot().relativize(path).toString() : path.toString();
+            return pattern.matcher(s).matches();
+        }
+
+        var states = new BitSet();
+        states.set(0);
+        if (path instanceof ModulePath) {
+            var mp = (ModulePath) path;
+            for (int i = 0; i < mp.getSegmentCount() && !states.isEmpty(); i++) {
+                states = advance(states, mp.getSegment(i));
+            }
+        } else {
+            for (var name : path) {
+                states = advance(states, name.toString());
+            }
+        }
+        return isComplete(states);
+    }
+
+    @Override
+    public String toString() {
+        return glob;
+    }
+}
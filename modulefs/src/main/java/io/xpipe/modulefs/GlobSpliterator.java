@@ -0,0 +1,123 @@
+package io.xpipe.modulefs;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+/**
+ * Finds the paths below a directory that match a segmented glob.
+ * Directories are only entered while a segment of the glob can still match, and segments
+ * that only match a single name are looked up directly instead of listing the directory.
+ */
+final class GlobSpliterator extends Spliterators.AbstractSpliterator<Path> {
+
+    private static final class Pending {
+
+        private final ModulePath dir;
+        private final BitSet states;
+
+        private Pending(ModulePath dir, BitSet states) {
+            this.dir = dir;
+            this.states = states;
+        }
+    }
+
+    private final Glob glob;
+    private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+    private final ArrayDeque<ModulePath> matches = new ArrayDeque<>();
+
+    GlobSpliterator(ModulePath root, Glob glob) {
+        super(Long.MAX_VALUE, NONNULL | DISTINCT);
+        this.glob = glob;
+        var start = new BitSet();
+        start.set(0);
+        pending.push(new Pending(root, start));
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Path> action) {
+        while (matches.isEmpty() && !pending.isEmpty()) {
+            try {
+                process(pending.pop());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        var next = matches.poll();
+        if (next == null) {
+            return false;
+        }
+        action.accept(next);
+        return true;
+    }
+
+    private Set<String> getLiterals(BitSet states) {
+        var literals = new LinkedHashSet<String>();
+        for (int i = states.nextSetBit(0); i >= 0 && i < glob.getSegmentCount(); i = states.nextSetBit(i + 1)) {
+            var literal = glob.getSegment(i).getLiteral();
+            if (literal == null) {
+                return null;
+            }
+            literals.add(literal);
+        }
+        return literals;
+    }
+
+    private void process(Pending p) throws IOException {
+        var literals = getLiterals(p.states);
+        if (literals != null) {
+            for (var literal : literals) {
+                var child = p.dir.resolveName(literal);
+                BasicFileAttributes attrs;
+                try {
+                    attrs = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                } catch (NoSuchFileException e) {
+                    continue;
+                }
+                add(child, attrs.isDirectory(), glob.advance(p.states, literal));
+            }
+            return;
+        }
+
+        try (var ds = Files.newDirectoryStream(p.dir)) {
+            for (var entry : ds) {
+                var child = (ModulePath) entry;
+                var next = glob.advance(p.states, child.getSegment(child.getSegmentCount() - 1));
+                if (next.isEmpty()) {
+                    continue;
+                }
+
+                var descend = next.nextSetBit(0) < glob.getSegmentCount();
+                add(child, descend && isDirectory(child), next);
+            }
+        }
+    }
+
+    private static boolean isDirectory(ModulePath child) {
+        try {
+            return ModuleFiles.readListedAttributes(child, LinkOption.NOFOLLOW_LINKS).isDirectory();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void add(ModulePath child, boolean directory, BitSet states) {
+        if (glob.isComplete(states)) {
+            matches.add(child);
+        }
+        if (directory && states.nextSetBit(0) < glob.getSegmentCount()) {
+            pending.push(new Pending(child, states));
+        }
+    }
+}
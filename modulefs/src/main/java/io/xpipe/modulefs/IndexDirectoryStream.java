@@ -0,0 +1,81 @@
+package io.xpipe.modulefs;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+final class IndexDirectoryStream implements DirectoryStream<Path> {
+
+    private final ModulePath dir;
+    private final ModuleIndex index;
+    private final int entry;
+    private final Filter<? super Path> filter;
+    private final boolean attributes;
+    private boolean open = true;
+    private boolean iterated;
+
+    /**
+     * Creates a stream over the children of an index entry.
+     * If the index contains the complete attributes of its entries, they are passed on to the listed paths.
+     */
+    IndexDirectoryStream(ModulePath dir, ModuleIndex index, int entry, Filter<? super Path> filter, boolean attributes) {
+        this.dir = dir;
+        this.index = index;
+        this.entry = entry;
+        this.filter = filter;
+        this.attributes = attributes;
+    }
+
+    @Override
+    public Iterator<Path> iterator() {
+        if (!open) {
+            throw new IllegalStateException("Directory stream is closed");
+        }
+        if (iterated) {
+            throw new IllegalStateException("Iterator already obtained");
+        }
+        iterated = true;
+
+        int first = index.getFirstChild(entry);
+        int end = first + index.getChildCount(entry);
+        return new Iterator<>() {
+
+            private int current = first;
+            private Path next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && open && current < end) {
+                    int child = current++;
+                    var p = dir.resolveName(index.getName(child), attributes ? index.getAttributes(child) : null);
+                    try {
+                        if (filter == null || filter.accept(p)) {
+                            next = p;
+                        }
+                    } catch (IOException e) {
+                        throw new DirectoryIteratorException(e);
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public Path next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                var p = next;
+                next = null;
+                return p;
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        open = false;
+    }
+}
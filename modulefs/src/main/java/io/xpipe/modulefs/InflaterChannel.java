@@ -0,0 +1,121 @@
+package io.xpipe.modulefs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+final class InflaterChannel implements SeekableByteChannel {
+
+    private final ByteBuffer compressed;
+    private final long size;
+    private final Inflater inflater = new Inflater(true);
+    private ByteBuffer input;
+    private long position;
+    private boolean open = true;
+
+    InflaterChannel(ByteBuffer compressed, long size) {
+        this.compressed = compressed;
+        this.size = size;
+        this.input = compressed.duplicate();
+        this.inflater.setInput(input);
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    private int inflate(ByteBuffer dst) throws IOException {
+        try {
+            int n = inflater.inflate(dst);
+            if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()) && !inflater.finished()) {
+                throw new ZipException("Unexpected end of compressed entry data");
+            }
+            position += n;
+            return n;
+        } catch (DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer dst) throws IOException {
+        ensureOpen();
+        if (position >= size || inflater.finished()) {
+            return -1;
+        }
+        if (!dst.hasRemaining()) {
+            return 0;
+        }
+
+        int n;
+        do {
+            n = inflate(dst);
+        } while (n == 0 && !inflater.finished());
+        return n == 0 ? -1 : n;
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized long position() throws IOException {
+        ensureOpen();
+        return position;
+    }
+
+    @Override
+    public synchronized SeekableByteChannel position(long newPosition) throws IOException {
+        ensureOpen();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Negative position");
+        }
+
+        // Deflate streams can only be read forward, so seeking backwards restarts from the beginning
+        if (newPosition < position) {
+            inflater.reset();
+            input = compressed.duplicate();
+            inflater.setInput(input);
+            position = 0;
+        }
+
+        var skip = ByteBuffer.allocate(8192);
+        while (position < newPosition && !inflater.finished()) {
+            skip.clear().limit((int) Math.min(skip.capacity(), newPosition - position));
+            inflate(skip);
+        }
+        return this;
+    }
+
+    @Override
+    public synchronized long size() throws IOException {
+        ensureOpen();
+        return size;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (open) {
+            open = false;
+            inflater.end();
+        }
+    }
+}
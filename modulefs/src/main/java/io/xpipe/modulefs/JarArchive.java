@@ -0,0 +1,458 @@
+package io.xpipe.modulefs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+final class JarArchive implements Closeable {
+
+    static final class Entry {
+
+        private final String name;
+        private final int method;
+        private final long crc;
+        private final long compressedSize;
+        private final long size;
+        private final long dosTime;
+        private final int localHeaderOffset;
+        private volatile int dataOffset = -1;
+
+        private Entry(String name, int method, long crc, long compressedSize, long size, long dosTime, int localHeaderOffset) {
+            this.name = name;
+            this.method = method;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.dosTime = dosTime;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        boolean isDirectory() {
+            return name.endsWith("/");
+        }
+
+        boolean isStored() {
+            return method == ZipEntry.STORED;
+        }
+
+        long getCrc() {
+            return crc;
+        }
+
+        long getCompressedSize() {
+            return compressedSize;
+        }
+
+        long getSize() {
+            return size;
+        }
+
+        long getLastModifiedTime() {
+            try {
+                var ldt = LocalDateTime.of(
+                        (int) (((dosTime >> 25) & 0x7f) + 1980),
+                        (int) ((dosTime >> 21) & 0x0f),
+                        (int) ((dosTime >> 16) & 0x1f),
+                        (int) ((dosTime >> 11) & 0x1f),
+                        (int) ((dosTime >> 5) & 0x3f),
+                        (int) ((dosTime << 1) & 0x3e));
+                return ldt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            } catch (DateTimeException e) {
+                return 0;
+            }
+        }
+    }
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int END_SIZE = 22;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_END_SIZE = 56;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+    private static final int UTF8_FLAG = 0x800;
+    // 1980-01-01 00:00, so that written archives are reproducible
+    private static final int DOS_EPOCH = (1 << 21) | (1 << 16);
+
+    static JarArchive open(Path file) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new ZipException("Jar file " + file + " is too large to be mapped");
+            }
+
+            var mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new JarArchive(file.toString(), mapping);
+        }
+    }
+
+    /**
+     * The location of the central directory. Archives with more than 65535 entries store it in an additional ZIP64 end record.
+     */
+    private static final class Directory {
+
+        private final int end;
+        private final int zip64End;
+        private final int count;
+        private final int offset;
+        private final int size;
+
+        private Directory(int end, int zip64End, int count, int offset, int size) {
+            this.end = end;
+            this.zip64End = zip64End;
+            this.count = count;
+            this.offset = offset;
+            this.size = size;
+        }
+    }
+
+    private final String name;
+    private final ByteBuffer data;
+    private final Directory directory;
+    // The central directory is only parsed once an entry can't be found through an index
+    private volatile Map<String, Entry> entries;
+
+    JarArchive(String name, ByteBuffer data) throws IOException {
+        this.name = name;
+        this.data = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        this.directory = locateDirectory();
+    }
+
+    private ZipException invalid(String message) {
+        return new ZipException("Invalid jar file " + name + ": " + message);
+    }
+
+    private int findEnd() throws IOException {
+        int min = Math.max(0, data.limit() - END_SIZE - MAX_COMMENT_SIZE);
+        for (int i = data.limit() - END_SIZE; i >= min; i--) {
+            if (data.getInt(i) == END_SIGNATURE) {
+                return i;
+            }
+        }
+        throw invalid("end of central directory not found");
+    }
+
+    private Directory locateDirectory() throws IOException {
+        int end = findEnd();
+        long count = Short.toUnsignedInt(data.getShort(end + 10));
+        long size = Integer.toUnsignedLong(data.getInt(end + 12));
+        long offset = Integer.toUnsignedLong(data.getInt(end + 16));
+
+        int zip64End = -1;
+        int locator = end - ZIP64_LOCATOR_SIZE;
+        if (locator >= 0 && data.getInt(locator) == ZIP64_LOCATOR_SIGNATURE) {
+            long record = data.getLong(locator + 8);
+            if (record < 0 || record > locator - ZIP64_END_SIZE || data.getInt((int) record) != ZIP64_END_SIGNATURE) {
+                throw invalid("bad ZIP64 end record");
+            }
+            zip64End = (int) record;
+            count = data.getLong(zip64End + 32);
+            size = data.getLong(zip64End + 40);
+            offset = data.getLong(zip64End + 48);
+        }
+
+        // Every central directory header takes at least 46 bytes
+        int limit = zip64End != -1 ? zip64End : end;
+        if (offset < 0 || size < 0 || offset + size > limit || count < 0 || count > size / 46) {
+            throw invalid("central directory out of bounds");
+        }
+        return new Directory(end, zip64End, (int) count, (int) offset, (int) size);
+    }
+
+    private Entry readCentralHeader(int pos, String entryName) throws IOException {
+        if (data.getInt(pos) != CENTRAL_HEADER_SIGNATURE) {
+            throw invalid("bad central directory header");
+        }
+        int flags = Short.toUnsignedInt(data.getShort(pos + 8));
+        if ((flags & 1) != 0) {
+            throw invalid("encrypted entries are not supported");
+        }
+
+        int method = Short.toUnsignedInt(data.getShort(pos + 10));
+        long dosTime = Integer.toUnsignedLong(data.getInt(pos + 12));
+        long crc = Integer.toUnsignedLong(data.getInt(pos + 16));
+        long compressedSize = Integer.toUnsignedLong(data.getInt(pos + 20));
+        long size = Integer.toUnsignedLong(data.getInt(pos + 24));
+        long localHeaderOffset = Integer.toUnsignedLong(data.getInt(pos + 42));
+        if (size == ZIP64_MAGIC || compressedSize == ZIP64_MAGIC || localHeaderOffset == ZIP64_MAGIC) {
+            // The actual values follow in the ZIP64 extra field, but only for the fields that are saturated
+            int extra = pos + 46 + Short.toUnsignedInt(data.getShort(pos + 28));
+            int extraEnd = extra + Short.toUnsignedInt(data.getShort(pos + 30));
+            while (extra + 4 <= extraEnd) {
+                int length = Short.toUnsignedInt(data.getShort(extra + 2));
+                if (Short.toUnsignedInt(data.getShort(extra)) == ZIP64_EXTRA_ID) {
+                    int field = extra + 4;
+                    int fieldEnd = Math.min(field + length, extraEnd);
+                    if (size == ZIP64_MAGIC && field + 8 <= fieldEnd) {
+                        size = data.getLong(field);
+                        field += 8;
+                    }
+                    if (compressedSize == ZIP64_MAGIC && field + 8 <= fieldEnd) {
+                        compressedSize = data.getLong(field);
+                        field += 8;
+                    }
+                    if (localHeaderOffset == ZIP64_MAGIC && field + 8 <= fieldEnd) {
+                        localHeaderOffset = data.getLong(field);
+                    }
+                    break;
+                }
+                extra += 4 + length;
+            }
+        }
+
+        if (size < 0 || compressedSize < 0 || localHeaderOffset < 0 || localHeaderOffset >= directory.offset) {
+            throw invalid("local header out of bounds");
+        }
+        return new Entry(entryName, method, crc, compressedSize, size, dosTime, (int) localHeaderOffset);
+    }
+
+    private int nextCentralHeader(int pos) {
+        int nameLength = Short.toUnsignedInt(data.getShort(pos + 28));
+        int extraLength = Short.toUnsignedInt(data.getShort(pos + 30));
+        int commentLength = Short.toUnsignedInt(data.getShort(pos + 32));
+        return pos + 46 + nameLength + extraLength + commentLength;
+    }
+
+    private Map<String, Entry> readCentralDirectory() throws IOException {
+        var map = new HashMap<String, Entry>(directory.count * 4 / 3 + 1);
+        int pos = directory.offset;
+        for (int i = 0; i < directory.count; i++) {
+            var nameBytes = new byte[Short.toUnsignedInt(data.getShort(pos + 28))];
+            data.get(pos + 46, nameBytes);
+            var entryName = new String(nameBytes, StandardCharsets.UTF_8);
+            map.put(entryName, readCentralHeader(pos, entryName));
+            pos = nextCentralHeader(pos);
+        }
+        return map;
+    }
+
+    Optional<Entry> getEntry(String entryName) throws IOException {
+        return Optional.ofNullable(getEntries().get(entryName));
+    }
+
+    Map<String, Entry> getEntries() throws IOException {
+        var map = entries;
+        if (map == null) {
+            synchronized (this) {
+                map = entries;
+                if (map == null) {
+                    map = Collections.unmodifiableMap(readCentralDirectory());
+                    entries = map;
+                }
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Looks up a single entry by comparing the names of the central directory headers, without parsing the whole directory.
+     * The index is written with the first header, so it is found right away.
+     */
+    Optional<Entry> findEntry(String entryName) throws IOException {
+        if (entries != null) {
+            return getEntry(entryName);
+        }
+
+        var nameBytes = entryName.getBytes(StandardCharsets.UTF_8);
+        int pos = directory.offset;
+        for (int i = 0; i < directory.count; i++) {
+            if (data.getInt(pos) != CENTRAL_HEADER_SIGNATURE) {
+                throw invalid("bad central directory header");
+            }
+            if (Short.toUnsignedInt(data.getShort(pos + 28)) == nameBytes.length
+                    && data.slice(pos + 46, nameBytes.length).equals(ByteBuffer.wrap(nameBytes))) {
+                return Optional.of(readCentralHeader(pos, entryName));
+            }
+            pos = nextCentralHeader(pos);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Returns the entry of a file, which is located through the local header offset that is stored in an index if possible,
+     * so that the central directory doesn't have to be parsed.
+     * If the archive was changed without updating the index and the header doesn't belong to the file anymore, the central directory is used.
+     */
+    Optional<Entry> getFileEntry(ModuleIndex index, ModulePath target) throws IOException {
+        var entryName = target.toRelativeString();
+        int entry = index != null ? index.find(target) : -1;
+        int header = entry != -1 ? index.getOffset(entry) : -1;
+        var nameBytes = entryName.getBytes(StandardCharsets.UTF_8);
+        if (header < 0 || header + 30 + nameBytes.length > data.limit()
+                || data.getInt(header) != LOCAL_HEADER_SIGNATURE
+                || Short.toUnsignedInt(data.getShort(header + 26)) != nameBytes.length
+                || !data.slice(header + 30, nameBytes.length).equals(ByteBuffer.wrap(nameBytes))) {
+            return getEntry(entryName).filter(e -> !e.isDirectory());
+        }
+
+        int method = Short.toUnsignedInt(data.getShort(header + 8));
+        long size = index.getSize(entry);
+        // Local headers don't have to contain sizes, so deflated data is bounded by the archive and ends with its last block
+        int dataOffset = header + 30 + nameBytes.length + Short.toUnsignedInt(data.getShort(header + 28));
+        long compressedSize = method == ZipEntry.STORED ? size : data.limit() - dataOffset;
+        return Optional.of(new Entry(entryName, method, index.getCrc(entry), compressedSize, size, 0, header));
+    }
+
+    ModuleIndex createIndex() throws IOException {
+        var builder = new ModuleIndex.Builder();
+        for (var e : getEntries().values()) {
+            if (e.getName().equals(ModuleIndexWriter.LOCATION)) {
+                continue;
+            }
+
+            var segments = Arrays.stream(e.getName().split("/"))
+                    .filter(s -> !s.isEmpty())
+                    .collect(Collectors.toList());
+            var type = e.isDirectory() ? ModuleIndex.DIRECTORY : ModuleIndex.FILE;
+            builder.add(segments, type, e.getSize(), e.getLastModifiedTime(),
+                    e.isDirectory() ? -1 : e.getCrc(), e.isDirectory() ? -1 : e.localHeaderOffset);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Writes this archive with an additional stored entry.
+     * The entry data is placed after all other entries, so their local headers keep their offsets,
+     * and its central directory header comes first, so that {@link #findEntry(String)} finds it right away.
+     */
+    void write(WritableByteChannel out, String entryName, byte[] contents) throws IOException {
+        int count = directory.count;
+        if (directory.zip64End == -1 && count + 1 >= 0xFFFF) {
+            throw invalid("too many entries");
+        }
+        int cdSize = directory.size;
+        int cdOffset = directory.offset;
+
+        var nameBytes = entryName.getBytes(StandardCharsets.UTF_8);
+        var crc = new CRC32();
+        crc.update(contents);
+
+        var local = ByteBuffer.allocate(30 + nameBytes.length).order(ByteOrder.LITTLE_ENDIAN);
+        local.putInt(LOCAL_HEADER_SIGNATURE).putShort((short) 10).putShort((short) UTF8_FLAG).putShort((short) ZipEntry.STORED)
+                .putInt(DOS_EPOCH).putInt((int) crc.getValue()).putInt(contents.length).putInt(contents.length)
+                .putShort((short) nameBytes.length).putShort((short) 0).put(nameBytes).flip();
+
+        var central = ByteBuffer.allocate(46 + nameBytes.length).order(ByteOrder.LITTLE_ENDIAN);
+        central.putInt(CENTRAL_HEADER_SIGNATURE).putShort((short) 20).putShort((short) 10).putShort((short) UTF8_FLAG)
+                .putShort((short) ZipEntry.STORED).putInt(DOS_EPOCH).putInt((int) crc.getValue())
+                .putInt(contents.length).putInt(contents.length).putShort((short) nameBytes.length)
+                .putShort((short) 0).putShort((short) 0).putShort((short) 0).putShort((short) 0).putInt(0)
+                .putInt(cdOffset).put(nameBytes).flip();
+
+        // Everything after the central directory, which are the end records that have to point to its new location
+        int tailStart = cdOffset + cdSize;
+        var tail = ByteBuffer.allocate(data.limit() - tailStart).order(ByteOrder.LITTLE_ENDIAN);
+        tail.put(data.slice(tailStart, tail.capacity())).flip();
+        int newOffset = cdOffset + local.remaining() + contents.length;
+        int newSize = cdSize + central.remaining();
+        if (directory.zip64End != -1) {
+            int record = directory.zip64End - tailStart;
+            tail.putLong(record + 24, count + 1).putLong(record + 32, count + 1).putLong(record + 40, newSize).putLong(record + 48, newOffset);
+            tail.putLong(directory.end - ZIP64_LOCATOR_SIZE - tailStart + 8, directory.zip64End + newOffset - cdOffset + central.remaining());
+        }
+
+        // Fields of the end record that are saturated refer to the ZIP64 end record
+        int end = directory.end - tailStart;
+        short newCount = (short) Math.min(count + 1, 0xFFFF);
+        if (tail.getShort(end + 8) != (short) 0xFFFF) {
+            tail.putShort(end + 8, newCount).putShort(end + 10, newCount);
+        }
+        if (Integer.toUnsignedLong(tail.getInt(end + 12)) != ZIP64_MAGIC) {
+            tail.putInt(end + 12, newSize);
+        }
+        if (Integer.toUnsignedLong(tail.getInt(end + 16)) != ZIP64_MAGIC) {
+            tail.putInt(end + 16, newOffset);
+        }
+
+        for (var buffer : new ByteBuffer[] {
+                data.slice(0, cdOffset), local, ByteBuffer.wrap(contents), central, data.slice(cdOffset, cdSize), tail}) {
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Reads the index that was written into the archive at build time, if there is one.
+     */
+    ModuleIndex readIndex() throws IOException {
+        var entry = findEntry(ModuleIndexWriter.LOCATION);
+        if (entry.isEmpty()) {
+            return null;
+        }
+        return ModuleIndex.read(ByteBuffer.wrap(ModuleFileSystem.readFully(newChannel(entry.get()))));
+    }
+
+    ByteBuffer getRawData(Entry entry) throws IOException {
+        int offset = entry.dataOffset;
+        if (offset == -1) {
+            int header = entry.localHeaderOffset;
+            if (data.getInt(header) != LOCAL_HEADER_SIGNATURE) {
+                throw invalid("bad local header for " + entry.name);
+            }
+            int nameLength = Short.toUnsignedInt(data.getShort(header + 26));
+            int extraLength = Short.toUnsignedInt(data.getShort(header + 28));
+            offset = header + 30 + nameLength + extraLength;
+            entry.dataOffset = offset;
+        }
+
+        if (offset + entry.compressedSize > data.limit()) {
+            throw invalid("data of " + entry.name + " out of bounds");
+        }
+        return data.slice(offset, (int) entry.compressedSize).asReadOnlyBuffer();
+    }
+
+    SeekableByteChannel newChannel(Entry entry) throws IOException {
+        var raw = getRawData(entry);
+        if (entry.method == ZipEntry.STORED) {
+            return new ByteBufferChannel(raw);
+        }
+        if (entry.method == ZipEntry.DEFLATED) {
+            return new InflaterChannel(raw, entry.size);
+        }
+        throw new ZipException("Unsupported compression method " + entry.method + " of " + entry.name);
+    }
+
+    FileChannel newFileChannel(Entry entry) throws IOException {
+        if (entry.method == ZipEntry.STORED) {
+            return new BufferFileChannel(getRawData(entry));
+        }
+        return new SeekableFileChannel(newChannel(entry));
+    }
+
+    @Override
+    public void close() {
+        // The mapping is released once it becomes unreachable
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
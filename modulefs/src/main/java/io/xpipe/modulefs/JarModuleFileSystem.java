@@ -1,71 +1,220 @@
 package io.xpipe.modulefs;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.lang.reflect.InaccessibleObjectException;
 import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.ClosedFileSystemException;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.OpenOption;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileAttribute;
 import java.nio.file.spi.FileSystemProvider;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.ZipException;
 
 public final class JarModuleFileSystem extends ModuleFileSystem {
 
     static Optional<JarModuleFileSystem> create(
-            String module, FileSystemProvider provider, URI modUri) throws IOException {
+            String module, ModuleFileSystemProvider provider, URI modUri) throws IOException {
         if (modUri.getPath().endsWith(".jar")) {
-            var fsUri = URI.create("jar:" + modUri.toString());
-            FileSystem jarFs;
-
             Path modFilePath = Path.of(modUri);
-            synchronized (openFsCounts) {
-                if (openFsCounts.containsKey(modFilePath)) {
-                    jarFs = FileSystems.getFileSystem(fsUri);
-                } else {
-                    jarFs = FileSystems.newFileSystem(fsUri, Map.of());
-                    try {
-                        var m = jarFs.getClass().getDeclaredField("readOnly");
-                        m.setAccessible(true);
-                        m.set(jarFs, true);
-                    } catch (IllegalAccessException | NoSuchFieldException | InaccessibleObjectException ignored) {
-                    } catch (Exception e) {
-                        throw new RuntimeException("Unable to make file " + modFilePath + " read-only", e);
-                    }
-                }
-                return Optional.of(new JarModuleFileSystem(module, jarFs.getPath("/"), modFilePath, provider));
+            LeaseRegistry<Path, JarArchive>.Lease archiveLease;
+            try {
+                archiveLease = MappedJarModuleFileSystem.acquireMappedArchive(modFilePath);
+            } catch (ZipException e) {
+                // Jars that can't be mapped, for example ones larger than 2 GB, are only read through the zip file system
+                archiveLease = null;
             }
+            return Optional.of(new JarModuleFileSystem(module, modFilePath, archiveLease, provider));
         }
         return Optional.empty();
     }
 
-    private static final Map<Path,Integer> openFsCounts = new HashMap<>();
+    static LeaseRegistry<Path, FileSystem>.Lease acquireArchive(Path modFilePath) throws IOException {
+        return archives.acquire(modFilePath, JarModuleFileSystem::openArchive);
+    }
+
+    private static FileSystem openArchive(Path modFilePath) throws IOException {
+        // Opening by path does not register the file system globally, so opens of different jars don't contend
+        var jarFs = FileSystems.newFileSystem(modFilePath, Map.of());
+        try {
+            var m = jarFs.getClass().getDeclaredField("readOnly");
+            m.setAccessible(true);
+            m.set(jarFs, true);
+        } catch (IllegalAccessException | NoSuchFieldException | InaccessibleObjectException ignored) {
+        } catch (Exception e) {
+            jarFs.close();
+            throw new RuntimeException("Unable to make file " + modFilePath + " read-only", e);
+        }
+        return jarFs;
+    }
 
-    private final Path jarFilePath;
+    private static final LeaseRegistry<Path, FileSystem> archives = new LeaseRegistry<>(LeaseRegistry::fileStamp);
 
-    JarModuleFileSystem(String module, Path basePath, Path jarFilePath, FileSystemProvider provider) {
-        super(module, basePath, provider);
-        this.jarFilePath = jarFilePath;
-        synchronized (openFsCounts) {
-            openFsCounts.put(jarFilePath, openFsCounts.getOrDefault(jarFilePath, 0) + 1);
+    private final Path modFilePath;
+    private final LeaseRegistry<Path, JarArchive>.Lease archiveLease;
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile LeaseRegistry<Path, FileSystem>.Lease lease;
+
+    JarModuleFileSystem(
+            String module, Path modFilePath, LeaseRegistry<Path, JarArchive>.Lease archiveLease, ModuleFileSystemProvider provider) {
+        super(module, null, provider);
+        this.modFilePath = modFilePath;
+        this.archiveLease = archiveLease;
+        if (archiveLease != null) {
+            track(archiveLease);
         }
     }
 
-    @Override
-    public void close() throws IOException {
-        synchronized (openFsCounts) {
-            int openCount = openFsCounts.get(this.jarFilePath);
-            openFsCounts.put(this.jarFilePath, --openCount);
-            if (openCount == 0) {
-                basePath.getFileSystem().close();
-                openFsCounts.remove(this.jarFilePath);
+    /**
+     * Opens the zip file system once a lookup can't be answered by the index and the mapped archive.
+     */
+    private FileSystem getZipFileSystem() throws IOException {
+        var l = lease;
+        if (l == null) {
+            lock.lock();
+            try {
+                if (!isOpen()) {
+                    throw new ClosedFileSystemException();
+                }
+                l = lease;
+                if (l == null) {
+                    l = acquireArchive(modFilePath);
+                    track(l);
+                    lease = l;
+                }
+            } finally {
+                lock.unlock();
             }
         }
+        return l.get();
+    }
+
+    /**
+     * Operations that can fail open the zip file system through {@link #getBaseProvider()} first,
+     * so only conversions to wrapped paths, which can't throw checked exceptions, fail here.
+     */
+    @Override
+    Path getBasePath() {
+        try {
+            return getZipFileSystem().getPath("/");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    FileSystemProvider getBaseProvider() throws IOException {
+        return getZipFileSystem().provider();
+    }
+
+    @Override
+    Path toTargetPath(ModulePath path) throws IOException {
+        getZipFileSystem();
+        return super.toTargetPath(path);
+    }
+
+    @Override
+    ModulePath toRealPath(ModulePath path, LinkOption... options) throws IOException {
+        getZipFileSystem();
+        return super.toRealPath(path, options);
+    }
+
+    @Override
+    ModuleIndex loadIndex() throws IOException {
+        if (archiveLease == null) {
+            getZipFileSystem();
+            return super.loadIndex();
+        }
+        // The index is read without opening the zip file system, which would scan the entire central directory
+        return archiveLease.get().readIndex();
     }
 
     @Override
-    public boolean isOpen() {
-        return basePath.getFileSystem().isOpen();
+    ModuleIndex createIndex() throws IOException {
+        if (archiveLease == null) {
+            getZipFileSystem();
+            return super.createIndex();
+        }
+        return archiveLease.get().createIndex();
+    }
+
+    private Optional<JarArchive.Entry> getFileEntry(ModulePath path) throws IOException {
+        var index = getIndex();
+        if (archiveLease == null || index == null) {
+            return Optional.empty();
+        }
+        return archiveLease.get().getFileEntry(index, resolveEntry(path));
+    }
+
+    @Override
+    SeekableByteChannel openChannel(ModulePath path, Set<? extends OpenOption> options, FileAttribute<?>... attrs) throws IOException {
+        var entry = getFileEntry(path);
+        if (entry.isEmpty()) {
+            return super.openChannel(path, options, attrs);
+        }
+        return archiveLease.get().newChannel(entry.get());
+    }
+
+    @Override
+    FileChannel openFileChannel(ModulePath path, Set<? extends OpenOption> options, FileAttribute<?>... attrs) throws IOException {
+        // The zip file system can't map entries, so file channels are opened from the mapped archive whenever there is one
+        var entry = archiveLease != null ? archiveLease.get().getFileEntry(getIndex(), resolveEntry(path)) : Optional.<JarArchive.Entry>empty();
+        if (entry.isEmpty()) {
+            return super.openFileChannel(path, options, attrs);
+        }
+        return archiveLease.get().newFileChannel(entry.get());
+    }
+
+    @Override
+    OptionalLong getCrc(ModulePath path) throws IOException {
+        var indexed = super.getCrc(path);
+        if (indexed.isPresent()) {
+            return indexed;
+        }
+
+        getZipFileSystem();
+        var crc = Files.getAttribute(path.getTargetPath(), "zip:crc");
+        return crc instanceof Long ? OptionalLong.of((Long) crc) : OptionalLong.empty();
+    }
+
+    @Override
+    String getBackendSeparator() {
+        return "/";
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
+
+    @Override
+    String getBackendName() {
+        return "jar";
+    }
+
+    @Override
+    void closeBackend() throws IOException {
+        lock.lock();
+        try {
+            if (lease != null) {
+                lease.close();
+            }
+        } finally {
+            lock.unlock();
+            if (archiveLease != null) {
+                archiveLease.close();
+            }
+        }
     }
 }
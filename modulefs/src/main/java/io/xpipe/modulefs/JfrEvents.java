@@ -0,0 +1,82 @@
+package io.xpipe.modulefs;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+final class JfrEvents {
+
+    @Category("Module File System")
+    abstract static class OperationEvent extends Event {
+
+        @Label("Module")
+        String module;
+
+        @Label("Backend")
+        String backend;
+
+        @Label("Path")
+        String path;
+    }
+
+    @Name("io.xpipe.modulefs.Resolve")
+    @Label("Module Resolution")
+    @Description("Resolution of a module in its layer")
+    static final class ResolveEvent extends OperationEvent {
+    }
+
+    @Name("io.xpipe.modulefs.Open")
+    @Label("File System Open")
+    @Description("Opening of a module file system")
+    static final class OpenEvent extends OperationEvent {
+    }
+
+    @Name("io.xpipe.modulefs.Read")
+    @Label("File Read")
+    @Description("Opening of a channel to read a module file")
+    static final class ReadEvent extends OperationEvent {
+    }
+
+    @Name("io.xpipe.modulefs.List")
+    @Label("Directory Listing")
+    @Description("Opening of a module directory stream")
+    static final class ListEvent extends OperationEvent {
+    }
+
+    static Object begin(FileSystemStats.Operation operation) {
+        OperationEvent event;
+        switch (operation) {
+            case RESOLVE:
+                event = new ResolveEvent();
+                break;
+            case OPEN:
+                event = new OpenEvent();
+                break;
+            case READ:
+                event = new ReadEvent();
+                break;
+            default:
+                event = new ListEvent();
+                break;
+        }
+        if (!event.isEnabled()) {
+            return null;
+        }
+
+        event.begin();
+        return event;
+    }
+
+    static void commit(Object event, String module, String backend, String path) {
+        var e = (OperationEvent) event;
+        e.end();
+        if (e.shouldCommit()) {
+            e.module = module;
+            e.backend = backend;
+            e.path = path;
+            e.commit();
+        }
+    }
+}
@@ -2,41 +2,143 @@ package io.xpipe.modulefs;
 
 import java.io.IOException;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
+import java.nio.file.OpenOption;
 import java.nio.file.Path;
-import java.nio.file.spi.FileSystemProvider;
+import java.nio.file.attribute.FileAttribute;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 public final class JrtModuleFileSystem extends ModuleFileSystem {
 
+    static final String EAGER_PROPERTY = "io.xpipe.modulefs.jrt.eager";
+    static final String CACHE_SIZE_PROPERTY = "io.xpipe.modulefs.jrt.cache.maxBytes";
+    static final String CACHE_ENTRY_SIZE_PROPERTY = "io.xpipe.modulefs.jrt.cache.maxEntrySize";
+
+    private static final LeaseRegistry<String, FileSystem> images = new LeaseRegistry<>();
+    private static LeaseRegistry<String, FileSystem>.Lease eagerLease;
+
+    /**
+     * Holds decompressed resources of the image, which is shared by all file systems as it can't change while running.
+     */
+    private static final class Resources {
+
+        private static final ResourceCache<String> CACHE = create();
+
+        private static ResourceCache<String> create() {
+            // Disabled by default, as the cache lives as long as the process
+            long size = Long.getLong(CACHE_SIZE_PROPERTY, 0);
+            return size > 0 ? new ResourceCache<>(size, Long.getLong(CACHE_ENTRY_SIZE_PROPERTY, size / 16)) : null;
+        }
+    }
+
+    /**
+     * Returns the statistics of the cache of decompressed image resources, unless it has been disabled.
+     */
+    public static Optional<CacheStats> getResourceCacheStats() {
+        return Optional.ofNullable(Resources.CACHE).map(ResourceCache::stats);
+    }
+
     static Optional<JrtModuleFileSystem> create(
             String module,
-            FileSystemProvider provider,
+            ModuleFileSystemProvider provider,
             URI uri,
             URI location) throws IOException {
         if (location.getScheme().equals("jrt")) {
             String moduleName = uri.getPath().substring(1);
-            var fs = FileSystems.newFileSystem(URI.create("jrt:/"), Map.of());
-            var basePath = fs.getPath("modules", moduleName);
-            return Optional.of(new JrtModuleFileSystem(module, basePath, provider));
+            var lease = acquireImage();
+            var basePath = lease.get().getPath("/modules", moduleName);
+            return Optional.of(new JrtModuleFileSystem(module, basePath, lease, provider));
         }
         return Optional.empty();
     }
 
-    private boolean open = true;
+    static synchronized void openEagerly() throws IOException {
+        if (eagerLease == null) {
+            eagerLease = acquireImage();
+        }
+    }
+
+    private static LeaseRegistry<String, FileSystem>.Lease acquireImage() throws IOException {
+        // Every jrt file system instance has its own image reader state, so all modules of an image share one
+        return images.acquire(System.getProperty("java.home"),
+                home -> FileSystems.newFileSystem(URI.create("jrt:/"), Map.of()));
+    }
+
+    private final LeaseRegistry<String, FileSystem>.Lease lease;
 
-    JrtModuleFileSystem(String module, Path basePath, FileSystemProvider provider) {
+    JrtModuleFileSystem(String module, Path basePath, LeaseRegistry<String, FileSystem>.Lease lease, ModuleFileSystemProvider provider) {
         super(module, basePath, provider);
+        this.lease = lease;
+        track(lease);
+    }
+
+    /**
+     * Returns the decompressed contents of a resource.
+     * Channels of jrt images decompress the entire resource on every open and can't be repositioned,
+     * so the contents are read once and kept in the cache if they fit.
+     */
+    private byte[] readResource(ModulePath path, Set<? extends OpenOption> options, FileAttribute<?>... attrs) throws IOException {
+        var cache = Resources.CACHE;
+        if (cache == null) {
+            return readFully(super.openChannel(path, options, attrs));
+        }
+
+        var key = path.getTargetPath().toString();
+        var cached = cache.get(key, 0);
+        if (cached != null) {
+            return cached;
+        }
+
+        var data = readFully(super.openChannel(path, options, attrs));
+        if (data.length <= cache.getMaxEntryWeight()) {
+            cache.put(key, data, 0);
+        }
+        return data;
+    }
+
+    @Override
+    boolean cachesContents() {
+        return Resources.CACHE != null;
+    }
+
+    @Override
+    SeekableByteChannel openChannel(ModulePath path, Set<? extends OpenOption> options, FileAttribute<?>... attrs) throws IOException {
+        return new ByteBufferChannel(ByteBuffer.wrap(readResource(path, options, attrs)));
+    }
+
+    @Override
+    FileChannel openFileChannel(ModulePath path, Set<? extends OpenOption> options, FileAttribute<?>... attrs) throws IOException {
+        // Resources of jrt images are not stored as regions of any file, so they are read into memory
+        return new BufferFileChannel(ByteBuffer.wrap(readResource(path, options, attrs)));
+    }
+
+    @Override
+    DirectoryStream<Path> newDirectoryStream(ModulePath dir, DirectoryStream.Filter<? super Path> filter) throws IOException {
+        if (getIndex() != null) {
+            return super.newDirectoryStream(dir, filter);
+        }
+
+        // The jrt file system lists a resource twice if it was opened before its directory was listed for the first time
+        var seen = new HashSet<String>();
+        var ds = getBaseProvider().newDirectoryStream(dir.getTargetPath(), p -> seen.add(p.getFileName().toString()));
+        return new ModuleDirectoryStream(dir, ds, filter);
     }
 
     @Override
-    public void close() throws IOException {
-        open = false;
+    String getBackendName() {
+        return "jrt";
     }
 
     @Override
-    public boolean isOpen() {
-        return open;
+    void closeBackend() throws IOException {
+        lease.close();
     }
 }
@@ -0,0 +1,76 @@
+package io.xpipe.modulefs;
+
+import java.util.Arrays;
+
+/**
+ * A histogram of operation latencies with power of two buckets.
+ * Bucket {@code i} counts latencies of at least {@code 2^i} and less than {@code 2^(i+1)} nanoseconds.
+ */
+public final class LatencyHistogram {
+
+    static final int BUCKETS = 64;
+
+    static int bucket(long nanos) {
+        return 63 - Long.numberOfLeadingZeros(Math.max(nanos, 1));
+    }
+
+    private final long[] buckets;
+    private final long count;
+    private final long totalNanos;
+    private final long maxNanos;
+
+    LatencyHistogram(long[] buckets, long totalNanos, long maxNanos) {
+        this.buckets = buckets;
+        this.count = Arrays.stream(buckets).sum();
+        this.totalNanos = totalNanos;
+        this.maxNanos = maxNanos;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    public double getMeanNanos() {
+        return count == 0 ? 0 : (double) totalNanos / count;
+    }
+
+    public long[] getBuckets() {
+        return buckets.clone();
+    }
+
+    /**
+     * Returns an upper bound of the given percentile, which is exact up to a factor of two.
+     */
+    public long getPercentileNanos(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile " + percentile + " is not between 0 and 100");
+        }
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                return i == 63 ? maxNanos : Math.min(maxNanos, (1L << (i + 1)) - 1);
+            }
+        }
+        return maxNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram{count=" + count + ", mean=" + (long) getMeanNanos() + "ns, p99=" + getPercentileNanos(99)
+                + "ns, max=" + maxNanos + "ns}";
+    }
+}
@@ -0,0 +1,141 @@
+package io.xpipe.modulefs;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A read-only union of all modules of a module layer, opened with the URI {@code module:/*}.
+ * Paths are resolved through a {@link LayerIndex}, so the module file systems backing the union
+ * are only opened once a file of the respective module is accessed.
+ */
+public final class LayerFileSystem extends DelegatingModuleFileSystem {
+
+    static final String NAME = "*";
+
+    static LayerFileSystem create(ModuleFileSystemProvider provider, ModuleLayer layer, Map<String, ?> env) throws IOException {
+        var backendEnv = new HashMap<String, Object>();
+        backendEnv.put("layer", layer);
+        for (var key : List.of("backend", "index")) {
+            if (env.containsKey(key)) {
+                backendEnv.put(key, env.get(key));
+            }
+        }
+        return new LayerFileSystem(provider, LayerIndex.of(layer), backendEnv);
+    }
+
+    private final LayerIndex layerIndex;
+    private final Map<String, ?> backendEnv;
+    private final Map<String, ModuleFileSystem> backends = new ConcurrentHashMap<>();
+
+    private LayerFileSystem(ModuleFileSystemProvider provider, LayerIndex layerIndex, Map<String, ?> backendEnv) {
+        super(NAME, provider);
+        this.layerIndex = layerIndex;
+        this.backendEnv = backendEnv;
+    }
+
+    private ModuleFileSystem getBackend(String module) throws IOException {
+        var fs = backends.get(module);
+        if (fs != null) {
+            return fs;
+        }
+
+        var created = provider().newFileSystem(URI.create("module:/" + module), backendEnv);
+        var existing = backends.putIfAbsent(module, created);
+        if (existing != null) {
+            created.close();
+            return existing;
+        }
+        if (!isOpen()) {
+            created.close();
+            throw new ClosedFileSystemException();
+        }
+        return created;
+    }
+
+    private int findEntry(ModulePath path) throws NoSuchFileException {
+        var entry = layerIndex.getIndex().find(resolveTarget(path));
+        if (entry == -1) {
+            throw new NoSuchFileException(path.toString());
+        }
+        return entry;
+    }
+
+    @Override
+    ModulePath toBackendPath(ModulePath path) throws IOException {
+        var backend = getBackend(layerIndex.getOwner(findEntry(path)));
+        return backend.getPath(resolveTarget(path).toRelativeString());
+    }
+
+    @Override
+    void checkAccess(ModulePath path, AccessMode... modes) throws IOException {
+        for (var mode : modes) {
+            if (mode != AccessMode.READ) {
+                throw new AccessDeniedException(path.toString());
+            }
+        }
+        findEntry(path);
+    }
+
+    @Override
+    DirectoryStream<Path> newDirectoryStream(ModulePath dir, DirectoryStream.Filter<? super Path> filter) throws IOException {
+        var entry = findEntry(dir);
+        if (!layerIndex.getIndex().isDirectory(entry)) {
+            throw new NotDirectoryException(dir.toString());
+        }
+        return new IndexDirectoryStream(dir, layerIndex.getIndex(), entry, filter, false);
+    }
+
+    @Override
+    ModulePath toRealPath(ModulePath path, LinkOption... options) throws IOException {
+        findEntry(path);
+        return resolveTarget(path);
+    }
+
+    @Override
+    String getBackendName() {
+        return "layer";
+    }
+
+    @Override
+    void closeBackend() throws IOException {
+        IOException failure = null;
+        for (var fs : backends.values()) {
+            try {
+                fs.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public Iterable<FileStore> getFileStores() {
+        var stores = new ArrayList<FileStore>();
+        for (var fs : backends.values()) {
+            fs.getFileStores().forEach(stores::add);
+        }
+        return stores;
+    }
+
+    /**
+     * Returns the name of the module that provides a file or directory.
+     */
+    public Optional<String> getOwner(Path path) {
+        if (!(path instanceof ModulePath) || path.getFileSystem() != this) {
+            throw new ProviderMismatchException();
+        }
+
+        var entry = layerIndex.getIndex().find(resolveTarget((ModulePath) path));
+        return entry != -1 ? Optional.ofNullable(layerIndex.getOwner(entry)) : Optional.empty();
+    }
+}
@@ -0,0 +1,116 @@
+package io.xpipe.modulefs;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.module.ResolvedModule;
+import java.util.*;
+
+/**
+ * An index of the entries of all modules of a module layer and its parents, which records the module owning each entry.
+ * If multiple modules contain the same file, the modules of a layer take precedence over those of its parents,
+ * and modules of the same layer take precedence in alphabetical order of their names.
+ * Directories are merged, so listing them returns the entries of all modules.
+ */
+final class LayerIndex {
+
+    private static final Map<ModuleLayer, LayerIndex> indices = Collections.synchronizedMap(new WeakHashMap<>());
+
+    static LayerIndex of(ModuleLayer layer) throws IOException {
+        var index = indices.get(layer);
+        if (index != null) {
+            return index;
+        }
+
+        var built = build(layer);
+        var existing = indices.putIfAbsent(layer, built);
+        return existing != null ? existing : built;
+    }
+
+    private static void collect(ModuleLayer layer, Set<String> seen, List<ResolvedModule> modules) {
+        // The modules of the layer, then its parents depth first.
+        // A configuration does not order its modules, so they are sorted by name to make shadowing deterministic
+        var own = new ArrayList<>(layer.configuration().modules());
+        own.sort(Comparator.comparing(ResolvedModule::name));
+        for (var m : own) {
+            if (seen.add(m.name())) {
+                modules.add(m);
+            }
+        }
+        for (var p : layer.parents()) {
+            collect(p, seen, modules);
+        }
+    }
+
+    private static LayerIndex build(ModuleLayer layer) throws IOException {
+        var modules = new ArrayList<ResolvedModule>();
+        collect(layer, new HashSet<>(), modules);
+
+        var builder = new ModuleIndex.Builder();
+        var entries = new ArrayList<List<String>>();
+        var entryOwners = new ArrayList<Integer>();
+        for (int i = 0; i < modules.size(); i++) {
+            int owner = i;
+            try (var reader = modules.get(i).reference().open(); var list = reader.list()) {
+                list.forEach(name -> {
+                    var directory = name.endsWith("/");
+                    var segments = new ArrayList<String>();
+                    for (var s : name.split("/")) {
+                        if (!s.isEmpty()) {
+                            segments.add(s);
+                        }
+                    }
+                    if (segments.isEmpty()) {
+                        return;
+                    }
+
+                    // Readers don't necessarily list all directories
+                    for (int j = 1; j < segments.size(); j++) {
+                        var parent = segments.subList(0, j);
+                        builder.add(parent, ModuleIndex.DIRECTORY, 0, 0, -1);
+                        entries.add(parent);
+                        entryOwners.add(owner);
+                    }
+                    builder.add(segments, directory ? ModuleIndex.DIRECTORY : ModuleIndex.FILE, 0, 0, -1);
+                    entries.add(segments);
+                    entryOwners.add(owner);
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+
+        var index = builder.build();
+        var owners = new int[index.size()];
+        Arrays.fill(owners, -1);
+        owners[ModuleIndex.ROOT] = modules.isEmpty() ? -1 : 0;
+        for (int i = 0; i < entries.size(); i++) {
+            var entry = index.find(entries.get(i));
+            if (owners[entry] == -1) {
+                owners[entry] = entryOwners.get(i);
+            }
+        }
+        return new LayerIndex(modules.stream().map(ResolvedModule::name).toArray(String[]::new), index, owners);
+    }
+
+    private final String[] modules;
+    private final ModuleIndex index;
+    private final int[] owners;
+
+    private LayerIndex(String[] modules, ModuleIndex index, int[] owners) {
+        this.modules = modules;
+        this.index = index;
+        this.owners = owners;
+    }
+
+    ModuleIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the name of the module that owns an entry of the index.
+     */
+    String getOwner(int entry) {
+        int owner = owners[entry];
+        return owner != -1 ? modules[owner] : null;
+    }
+}
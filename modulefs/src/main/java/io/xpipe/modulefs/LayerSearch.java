@@ -0,0 +1,141 @@
+package io.xpipe.modulefs;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Searches all modules of a layer concurrently and passes on matches while the search is still running.
+ * The file systems of modules with matches stay open until the stream is closed.
+ */
+final class LayerSearch extends Spliterators.AbstractSpliterator<ModulePath> {
+
+    private static final Object DONE = new Object();
+
+    static Stream<ModulePath> start(ModuleFileSystemProvider provider, ModuleLayer layer, String glob) {
+        var modules = new ArrayList<String>();
+        provider.listModules(layer).forEach(m -> modules.add(m.name()));
+
+        var executor = Threads.newVirtualThreadExecutor("modulefs-search");
+        var search = new LayerSearch(provider, layer, glob, modules.size(), executor);
+        for (var m : modules) {
+            executor.execute(() -> search.scan(m));
+        }
+        executor.shutdown();
+        return StreamSupport.stream(search, false).onClose(search::close);
+    }
+
+    private final ModuleFileSystemProvider provider;
+    private final ModuleLayer layer;
+    private final String glob;
+    private final ExecutorService executor;
+    private final BlockingQueue<Object> results = new LinkedBlockingQueue<>();
+    private final List<ModuleFileSystem> filesystems = new ArrayList<>();
+    private int remaining;
+    private boolean closed;
+
+    private LayerSearch(ModuleFileSystemProvider provider, ModuleLayer layer, String glob, int modules, ExecutorService executor) {
+        super(Long.MAX_VALUE, NONNULL | DISTINCT);
+        this.provider = provider;
+        this.layer = layer;
+        this.glob = glob;
+        this.remaining = modules;
+        this.executor = executor;
+    }
+
+    private void scan(String module) {
+        try {
+            var fs = provider.newFileSystem(URI.create("module:/" + module), Map.of("layer", layer));
+            var matched = false;
+            try {
+                try (var found = ModuleFiles.find(fs.getRoot(), glob)) {
+                    for (var it = found.iterator(); it.hasNext(); ) {
+                        matched = true;
+                        results.add(it.next());
+                    }
+                }
+            } finally {
+                if (!matched || !register(fs)) {
+                    fs.close();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Every failure has to reach the consumer, otherwise the module would silently be missing from the results
+            results.add(e);
+        } finally {
+            results.add(DONE);
+        }
+    }
+
+    private synchronized boolean register(ModuleFileSystem fs) {
+        if (closed) {
+            return false;
+        }
+        filesystems.add(fs);
+        return true;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super ModulePath> action) {
+        while (remaining > 0) {
+            Object next;
+            try {
+                next = results.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UncheckedIOException(new InterruptedIOException());
+            }
+
+            if (next == DONE) {
+                remaining--;
+            } else if (next instanceof IOException) {
+                throw new UncheckedIOException((IOException) next);
+            } else if (next instanceof UncheckedIOException) {
+                throw (UncheckedIOException) next;
+            } else if (next instanceof RuntimeException) {
+                throw (RuntimeException) next;
+            } else {
+                action.accept((ModulePath) next);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void close() {
+        executor.shutdownNow();
+        List<ModuleFileSystem> open;
+        synchronized (this) {
+            closed = true;
+            open = new ArrayList<>(filesystems);
+            filesystems.clear();
+        }
+
+        IOException failure = null;
+        for (var fs : open) {
+            try {
+                fs.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw new UncheckedIOException(failure);
+        }
+    }
+}
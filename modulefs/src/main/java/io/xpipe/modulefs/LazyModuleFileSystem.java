@@ -0,0 +1,99 @@
+package io.xpipe.modulefs;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.*;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The file system of paths that were created from a module URI while no file system of the module was open.
+ * Creating paths is cheap, the actual module file system is only opened once a file is accessed.
+ */
+final class LazyModuleFileSystem extends DelegatingModuleFileSystem {
+
+    // Opening is guarded by a lock instead of a monitor so that waiting virtual threads are not pinned
+    private final ReentrantLock openLock = new ReentrantLock();
+    private volatile ModuleFileSystem backend;
+
+    LazyModuleFileSystem(String module, ModuleFileSystemProvider provider) {
+        super(module, provider);
+    }
+
+    private ModuleFileSystem getBackend() throws IOException {
+        if (!isOpen()) {
+            throw new ClosedFileSystemException();
+        }
+
+        var fs = backend;
+        if (fs != null) {
+            return fs;
+        }
+
+        openLock.lock();
+        try {
+            if (backend == null) {
+                if (!isOpen()) {
+                    throw new ClosedFileSystemException();
+                }
+                // The backend is not registered, so that paths from URIs keep using this file system
+                backend = provider().newFileSystem(URI.create("module:/" + getModule()), Map.of(), false);
+            }
+            return backend;
+        } finally {
+            openLock.unlock();
+        }
+    }
+
+    @Override
+    ModulePath toBackendPath(ModulePath path) throws IOException {
+        return getBackend().getPath(resolveTarget(path).toRelativeString());
+    }
+
+    private ModulePath fromBackendPath(ModulePath path) {
+        return getPath(resolveTarget(path).toRelativeString());
+    }
+
+    @Override
+    void checkAccess(ModulePath path, AccessMode... modes) throws IOException {
+        var p = toBackendPath(path);
+        p.getModuleFileSystem().checkAccess(p, modes);
+    }
+
+    @Override
+    DirectoryStream<Path> newDirectoryStream(ModulePath dir, DirectoryStream.Filter<? super Path> filter) throws IOException {
+        var p = toBackendPath(dir);
+        return new ModuleDirectoryStream(dir, p.getModuleFileSystem().newDirectoryStream(p, null), filter);
+    }
+
+    @Override
+    ModulePath toRealPath(ModulePath path, LinkOption... options) throws IOException {
+        var p = toBackendPath(path);
+        return fromBackendPath(p.getModuleFileSystem().toRealPath(p, options));
+    }
+
+    @Override
+    String getBackendName() {
+        var fs = backend;
+        return fs != null ? fs.getBackendName() : "lazy";
+    }
+
+    @Override
+    void closeBackend() throws IOException {
+        openLock.lock();
+        try {
+            if (backend != null) {
+                backend.close();
+            }
+        } finally {
+            openLock.unlock();
+        }
+    }
+
+    @Override
+    public Iterable<FileStore> getFileStores() {
+        var fs = backend;
+        return fs != null ? fs.getFileStores() : List.of();
+    }
+}
@@ -0,0 +1,258 @@
+package io.xpipe.modulefs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Shares backend resources between all file systems that use them.
+ * Resources that are no longer leased can be kept open for an idle time, so that reopening a module is cheap.
+ * The idle time and the maximum number of idle resources per registry can be configured with the system properties
+ * {@value #IDLE_PROPERTY} and {@value #MAX_IDLE_PROPERTY}.
+ * Setting either to zero closes resources right away.
+ */
+final class LeaseRegistry<K, V extends Closeable> {
+
+    static final String IDLE_PROPERTY = "io.xpipe.modulefs.pool.idleMillis";
+    static final String MAX_IDLE_PROPERTY = "io.xpipe.modulefs.pool.maxIdle";
+
+    private static final long DEFAULT_IDLE_MILLIS = 30_000;
+    private static final long DEFAULT_MAX_IDLE = 16;
+
+    private static final class Scheduler {
+
+        private static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(r -> {
+            var t = new Thread(r, "modulefs-pool");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    interface Opener<K, V> {
+
+        V open(K key) throws IOException;
+    }
+
+    /**
+     * Returns a value that changes whenever the source of a resource changes, so that stale idle resources are reopened.
+     */
+    interface Stamper<K> {
+
+        Object stamp(K key) throws IOException;
+    }
+
+    final class Lease implements Closeable {
+
+        private final K key;
+        private final Entry<V> entry;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Lease(K key, Entry<V> entry) {
+            this.key = key;
+            this.entry = entry;
+        }
+
+        V get() {
+            return entry.value;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (released.compareAndSet(false, true)) {
+                release(key, entry);
+            }
+        }
+    }
+
+    private static final class Entry<V> {
+
+        // Opening is guarded by a lock instead of a monitor so that waiting virtual threads are not pinned
+        private final ReentrantLock openLock = new ReentrantLock();
+        private final AtomicInteger count = new AtomicInteger();
+        private final AtomicBoolean evictionScheduled = new AtomicBoolean();
+        private volatile V value;
+        private volatile Object stamp;
+        private volatile long idleSince;
+
+        private boolean retain() {
+            while (true) {
+                int c = count.get();
+                if (c < 0) {
+                    return false;
+                }
+                if (count.compareAndSet(c, c + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        private <K> void open(K key, Opener<K, V> opener, Stamper<K> stamper) throws IOException {
+            if (value != null) {
+                return;
+            }
+
+            openLock.lock();
+            try {
+                if (value == null) {
+                    stamp = stamper.stamp(key);
+                    value = opener.open(key);
+                }
+            } finally {
+                openLock.unlock();
+            }
+        }
+    }
+
+    private final ConcurrentHashMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    // Idle entries from the least to the most recently released one
+    private final LinkedHashMap<Entry<V>, K> idle = new LinkedHashMap<>();
+    private final Stamper<K> stamper;
+
+    LeaseRegistry() {
+        this(key -> null);
+    }
+
+    LeaseRegistry(Stamper<K> stamper) {
+        this.stamper = stamper;
+    }
+
+    static Object fileStamp(Path file) throws IOException {
+        var attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        return List.of(attributes.lastModifiedTime(), attributes.size());
+    }
+
+    Lease acquire(K key, Opener<K, V> opener) throws IOException {
+        while (true) {
+            var entry = entries.get(key);
+            if (entry == null) {
+                var created = new Entry<V>();
+                entry = entries.putIfAbsent(key, created);
+                if (entry == null) {
+                    entry = created;
+                }
+            }
+
+            // An idle resource is only reused if its source has not changed in the meantime
+            if (entry.count.get() == 0 && entry.value != null && !Objects.equals(entry.stamp, stamper.stamp(key))) {
+                retire(key, entry);
+                continue;
+            }
+
+            // The entry is being retired by the last lease holder, replace it with a fresh one
+            if (!entry.retain()) {
+                entries.remove(key, entry);
+                continue;
+            }
+            synchronized (idle) {
+                idle.remove(entry);
+            }
+
+            try {
+                entry.open(key, opener, stamper);
+            } catch (IOException | RuntimeException e) {
+                release(key, entry);
+                throw e;
+            }
+            return new Lease(key, entry);
+        }
+    }
+
+    private static long getIdleMillis() {
+        return Long.getLong(IDLE_PROPERTY, DEFAULT_IDLE_MILLIS);
+    }
+
+    private static long getMaxIdle() {
+        return Long.getLong(MAX_IDLE_PROPERTY, DEFAULT_MAX_IDLE);
+    }
+
+    private void release(K key, Entry<V> entry) throws IOException {
+        if (entry.count.decrementAndGet() != 0) {
+            return;
+        }
+
+        long idleMillis = getIdleMillis();
+        long maxIdle = getMaxIdle();
+        if (idleMillis <= 0 || maxIdle <= 0 || entry.value == null) {
+            retire(key, entry);
+            return;
+        }
+
+        entry.idleSince = System.nanoTime();
+        scheduleEviction(key, entry, idleMillis);
+        trimIdle(key, entry, maxIdle);
+    }
+
+    private void scheduleEviction(K key, Entry<V> entry, long delayMillis) {
+        if (entry.evictionScheduled.compareAndSet(false, true)) {
+            Scheduler.INSTANCE.schedule(() -> evictIfIdle(key, entry), delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void evictIfIdle(K key, Entry<V> entry) {
+        entry.evictionScheduled.set(false);
+        if (entry.count.get() != 0) {
+            return;
+        }
+
+        long remaining = getIdleMillis() - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - entry.idleSince);
+        if (remaining > 0) {
+            scheduleEviction(key, entry, remaining);
+            return;
+        }
+        retireQuietly(key, entry);
+    }
+
+    private void trimIdle(K key, Entry<V> released, long maxIdle) {
+        var evicted = new ArrayList<Map.Entry<Entry<V>, K>>();
+        synchronized (idle) {
+            idle.put(released, key);
+            for (var it = idle.entrySet().iterator(); idle.size() > maxIdle && it.hasNext(); ) {
+                var e = it.next();
+                evicted.add(Map.entry(e.getKey(), e.getValue()));
+                it.remove();
+            }
+        }
+        for (var e : evicted) {
+            retireQuietly(e.getValue(), e.getKey());
+        }
+    }
+
+    private void retireQuietly(K key, Entry<V> entry) {
+        try {
+            retire(key, entry);
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Closes an entry if it is not leased, which can't be undone by a concurrent acquisition.
+     */
+    private void retire(K key, Entry<V> entry) throws IOException {
+        if (!entry.count.compareAndSet(0, -1)) {
+            return;
+        }
+
+        entries.remove(key, entry);
+        synchronized (idle) {
+            idle.remove(entry);
+        }
+        var value = entry.value;
+        if (value != null) {
+            value.close();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package io.xpipe.modulefs;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A module jar that is mapped into memory, so that stored entries are read without copying them.
+ */
+public final class MappedJarModuleFileSystem extends ArchiveModuleFileSystem {
+
+    static final String BACKEND = "mapped";
+
+    static Optional<MappedJarModuleFileSystem> create(
+            String module, ModuleFileSystemProvider provider, URI modUri, Map<String, ?> env) throws IOException {
+        if (!BACKEND.equals(env.get("backend")) || !modUri.getPath().endsWith(".jar")) {
+            return Optional.empty();
+        }
+
+        Path modFilePath = Path.of(modUri);
+        return Optional.of(new MappedJarModuleFileSystem(module, modFilePath, acquireMappedArchive(modFilePath), provider));
+    }
+
+    static LeaseRegistry<Path, JarArchive>.Lease acquireMappedArchive(Path modFilePath) throws IOException {
+        return archives.acquire(modFilePath, JarArchive::open);
+    }
+
+    private static final LeaseRegistry<Path, JarArchive> archives = new LeaseRegistry<>(LeaseRegistry::fileStamp);
+
+    private final LeaseRegistry<Path, JarArchive>.Lease archiveLease;
+
+    MappedJarModuleFileSystem(
+            String module, Path modFilePath, LeaseRegistry<Path, JarArchive>.Lease archiveLease, ModuleFileSystemProvider provider) {
+        super(module, modFilePath, provider);
+        this.archiveLease = archiveLease;
+        track(archiveLease);
+    }
+
+    @Override
+    JarArchive getArchive() {
+        return archiveLease.get();
+    }
+
+    @Override
+    String getBackendName() {
+        return BACKEND;
+    }
+
+    @Override
+    void closeBackend() throws IOException {
+        archiveLease.close();
+    }
+}
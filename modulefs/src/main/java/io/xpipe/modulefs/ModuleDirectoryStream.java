@@ -1,18 +1,22 @@
 package io.xpipe.modulefs;
 
 import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Path;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 public class ModuleDirectoryStream implements DirectoryStream<Path> {
 
-    private ModuleFileSystem fs;
-    private DirectoryStream<Path> wrapped;
+    private final ModulePath dir;
+    private final DirectoryStream<Path> wrapped;
+    private final Filter<? super Path> filter;
 
-    public ModuleDirectoryStream(ModuleFileSystem fs, DirectoryStream<Path> wrapped) {
-        this.fs = fs;
+    ModuleDirectoryStream(ModulePath dir, DirectoryStream<Path> wrapped, Filter<? super Path> filter) {
+        this.dir = dir;
         this.wrapped = wrapped;
+        this.filter = filter;
     }
 
     @Override
@@ -20,14 +24,32 @@ public class ModuleDirectoryStream implements DirectoryStream<Path> {
         var it = wrapped.iterator();
         return new Iterator<>() {
 
+            private Path next;
+
             @Override
             public boolean hasNext() {
-                return it.hasNext();
+                while (next == null && it.hasNext()) {
+                    var entry = it.next();
+                    var p = dir.resolveName(entry.getFileName().toString());
+                    try {
+                        if (filter == null || filter.accept(p)) {
+                            next = p;
+                        }
+                    } catch (IOException e) {
+                        throw new DirectoryIteratorException(e);
+                    }
+                }
+                return next != null;
             }
 
             @Override
             public Path next() {
-                return new ModulePath(fs, it.next());
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                var p = next;
+                next = null;
+                return p;
             }
         };
     }
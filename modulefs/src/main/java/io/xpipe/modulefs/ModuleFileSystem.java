@@ -1,109 +1,677 @@
 package io.xpipe.modulefs;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.lang.ref.Cleaner;
 import java.lang.module.ModuleReference;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileAttribute;
 import java.nio.file.attribute.UserPrincipalLookupService;
 import java.nio.file.spi.FileSystemProvider;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 public abstract class ModuleFileSystem extends FileSystem {
 
     public static ModuleFileSystem create(String uri) throws IOException {
-        ModuleFileSystemProvider fsp = FileSystemProvider.installedProviders().stream()
-                .filter(p -> p instanceof ModuleFileSystemProvider)
-                .map(p -> (ModuleFileSystemProvider) p)
-                .findFirst()
-                .orElseThrow(() -> new ProviderNotFoundException("modulefs provider not found"));
-        return fsp.newFileSystem(URI.create(uri), Map.of());
+        return create(uri, Map.of());
+    }
+
+    public static ModuleFileSystem create(String uri, Map<String, ?> env) throws IOException {
+        ModuleFileSystemProvider fsp = getProvider();
+        return fsp.newFileSystem(URI.create(uri), env);
     }
 
     public static ModuleFileSystem create(ModuleReference reference) throws IOException {
-        ModuleFileSystemProvider fsp = FileSystemProvider.installedProviders().stream()
+        ModuleFileSystemProvider fsp = getProvider();
+        var location = fsp.locate(reference).orElseThrow(() -> new IllegalArgumentException("Module reference location is unknown"));
+        var name = reference.descriptor().name();
+        var uri = URI.create("module:/" + name);
+        return fsp.newFileSystem(uri, Map.of("location", location));
+    }
+
+    /**
+     * Searches all modules of a layer and its parents concurrently for paths that match a glob pattern,
+     * which is matched against paths relative to the module root, for example {@code META-INF/services/*}.
+     * Matches are passed on as soon as they are found, so their order is not deterministic.
+     * The returned stream has to be closed to close the file systems of the matched paths.
+     */
+    public static Stream<ModulePath> find(ModuleLayer layer, String glob) {
+        return LayerSearch.start(getProvider(), layer, glob);
+    }
+
+    private static ModuleFileSystemProvider getProvider() {
+        return FileSystemProvider.installedProviders().stream()
                 .filter(p -> p instanceof ModuleFileSystemProvider)
                 .map(p -> (ModuleFileSystemProvider) p)
                 .findFirst()
                 .orElseThrow(() -> new ProviderNotFoundException("modulefs provider not found"));
-        var location = reference.location().orElseThrow(() -> new IllegalArgumentException("Module reference location is unknown"));
-        var name = reference.descriptor().name();
-        var uri = URI.create("module:/" + name);
-        return fsp.newFileSystem(uri, Map.of("location", location));
+    }
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    // Enough for the distinct names of large modules
+    private static final int MAX_INTERNED_NAMES = 1 << 16;
+
+    /**
+     * Releases the backend resources of a file system that became unreachable without being closed.
+     * It must not reference the file system itself, otherwise the file system would never become unreachable.
+     */
+    private static final class ResourceRelease implements Runnable {
+
+        private final List<Closeable> resources;
+
+        private ResourceRelease(List<Closeable> resources) {
+            this.resources = resources;
+        }
+
+        @Override
+        public void run() {
+            for (var resource : resources) {
+                try {
+                    resource.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
     }
 
     private final String module;
-    private final FileSystemProvider provider;
+    private final ModuleFileSystemProvider provider;
+    private final AtomicBoolean open = new AtomicBoolean(true);
     protected Path basePath;
+    // The index can be replaced by backends that watch for changes, so it is read once per operation
+    private volatile ModuleIndex index;
+    private volatile Map<String, String> versions = Map.of();
+    private ResourceCache<ModulePath> cache;
+    private ExecutorService asyncExecutor;
+    private AccessProfile recorder;
+    private ExecutorService preloader;
+    private CompletableFuture<Void> preload = CompletableFuture.completedFuture(null);
+    private final Map<String, String> names = new ConcurrentHashMap<>();
+    private final ModulePath root = ModulePath.root(this);
+    private final FileSystemMetrics metrics = new FileSystemMetrics();
+    private final List<Closeable> resources = new CopyOnWriteArrayList<>();
+    private final Cleaner.Cleanable cleanable = CLEANER.register(this, new ResourceRelease(resources));
 
-    ModuleFileSystem(String module, Path basePath, FileSystemProvider provider) {
+    ModuleFileSystem(String module, Path basePath, ModuleFileSystemProvider provider) {
         this.module = module;
         this.basePath = basePath;
         this.provider = provider;
     }
 
+    abstract void closeBackend() throws IOException;
+
+    /**
+     * Returns the name of the backend type that is used to tag metrics and events.
+     */
+    abstract String getBackendName();
+
+    @Override
+    public final void close() throws IOException {
+        if (open.compareAndSet(true, false)) {
+            if (preloader != null) {
+                preloader.shutdownNow();
+            }
+            provider.unregister(this);
+            try {
+                if (recorder != null) {
+                    recorder.close();
+                }
+            } finally {
+                try {
+                    closeBackend();
+                } finally {
+                    cleanable.clean();
+                }
+            }
+        }
+    }
+
+    /**
+     * Registers a backend resource that is released if this file system is never closed.
+     * Resources have to be idempotent to close, as they are also closed by the backend.
+     */
+    void track(Closeable resource) {
+        resources.add(resource);
+    }
+
+    @Override
+    public final boolean isOpen() {
+        return open.get();
+    }
+
     @Override
-    public FileSystemProvider provider() {
+    public ModuleFileSystemProvider provider() {
         return provider;
     }
 
-    FileSystemProvider getBaseProvider() {
-        return basePath.getFileSystem().provider();
+    /**
+     * Returns the module root in the backing file system, which backends can open lazily.
+     */
+    Path getBasePath() {
+        return basePath;
+    }
+
+    FileSystemProvider getBaseProvider() throws IOException {
+        return getBasePath().getFileSystem().provider();
+    }
+
+    static boolean isEnabled(Map<String, ?> env, String key) {
+        var value = env.get(key);
+        return Boolean.TRUE.equals(value) || "true".equals(value);
+    }
+
+    static long getLong(Map<String, ?> env, String key, long defaultValue) {
+        var value = env.get(key);
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof String) {
+            return Long.parseLong((String) value);
+        }
+        return defaultValue;
+    }
+
+    static boolean isDisabled(Map<String, ?> env, String key) {
+        var value = env.get(key);
+        return Boolean.FALSE.equals(value) || "false".equals(value);
+    }
+
+    void initialize(Map<String, ?> env) throws IOException {
+        if (!isDisabled(env, "index")) {
+            index = loadIndex();
+        }
+        if (index == null && isEnabled(env, "index")) {
+            index = createIndex();
+        }
+
+        var release = MultiRelease.getReleaseVersion(env);
+        if (release != -1 && isMultiRelease()) {
+            // The effective tree of a versioned jar can only be listed from an index
+            var i = index != null ? index : createIndex();
+            if (i != null) {
+                versions = MultiRelease.map(i, release);
+                index = i.overlay(versions);
+            }
+        }
+
+        var cacheSize = getLong(env, "cache.maxBytes", 0);
+        if (cacheSize > 0 && !cachesContents()) {
+            cache = new ResourceCache<>(cacheSize, getLong(env, "cache.maxEntrySize", cacheSize / 16));
+        }
+
+        var executor = env.get("async.executor");
+        if (executor instanceof ExecutorService) {
+            asyncExecutor = (ExecutorService) executor;
+        }
+
+        var recordFile = AccessProfile.getPath(env, "profile.record");
+        if (recordFile != null) {
+            recorder = new AccessProfile(recordFile);
+            recorder.start();
+        }
+
+        var preloadFile = AccessProfile.getPath(env, "profile.preload");
+        if (preloadFile != null) {
+            preload(AccessProfile.read(preloadFile));
+        }
+    }
+
+    private boolean isMultiRelease() throws IOException {
+        byte[] manifest;
+        try {
+            manifest = readFully(openChannel(getPath(MultiRelease.MANIFEST), Set.of(StandardOpenOption.READ)));
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        return MultiRelease.isMultiRelease(manifest);
+    }
+
+    private void preload(List<String> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        var executor = Threads.newVirtualThreadExecutor("modulefs-preload");
+        var futures = entries.stream()
+                .map(e -> CompletableFuture.runAsync(() -> warm(e), executor))
+                .toArray(CompletableFuture[]::new);
+        executor.shutdown();
+        preloader = executor;
+        preload = CompletableFuture.allOf(futures);
+    }
+
+    private void warm(String entry) {
+        // Reading the file fills the cache if enabled, otherwise it at least warms the operating system caches
+        try (var channel = readChannel(getPath(entry), Set.of(StandardOpenOption.READ))) {
+            var buffer = ByteBuffer.allocate(8192);
+            while (channel.read(buffer) != -1) {
+                buffer.clear();
+            }
+        } catch (IOException | RuntimeException ignored) {
+            // The profile might be outdated or the file system already closed
+        }
+    }
+
+    /**
+     * Returns a future that completes once all files of the preload profile have been read.
+     * Without a content cache, reading them only warms the page cache of the operating system.
+     */
+    public CompletableFuture<Void> getPreload() {
+        return preload;
+    }
+
+    /**
+     * Reads the index that was written into the module at build time, if there is one.
+     */
+    ModuleIndex loadIndex() throws IOException {
+        byte[] data;
+        try {
+            data = Files.readAllBytes(getBasePath().resolve(ModuleIndexWriter.LOCATION));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        return ModuleIndex.read(ByteBuffer.wrap(data));
+    }
+
+    ModuleIndex createIndex() throws IOException {
+        return ModuleIndex.of(getBasePath());
+    }
+
+    /**
+     * Returns whether the backend already keeps file contents in memory, in which case a content cache would only hold a second copy.
+     */
+    boolean cachesContents() {
+        return false;
+    }
+
+    ModuleIndex getIndex() {
+        return index;
+    }
+
+    void setIndex(ModuleIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * Removes a file from the content cache if there is one.
+     */
+    void invalidate(ModulePath path) {
+        if (cache != null) {
+            cache.invalidate(resolveTarget(path));
+        }
+    }
+
+    private static int findIndexEntry(ModuleIndex index, ModulePath path) throws NoSuchFileException {
+        var entry = index.find(path);
+        if (entry == -1) {
+            throw new NoSuchFileException(path.toString());
+        }
+        return entry;
+    }
+
+    @SuppressWarnings("unchecked")
+    <A extends BasicFileAttributes> A readAttributes(ModulePath path, Class<A> type, LinkOption... options) throws IOException {
+        var index = this.index;
+        if (index != null && type == BasicFileAttributes.class) {
+            return (A) index.getAttributes(findIndexEntry(index, resolveTarget(path)));
+        }
+        return getBaseProvider().readAttributes(path.getTargetPath(), type, options);
+    }
+
+    void checkAccess(ModulePath path, AccessMode... modes) throws IOException {
+        var index = this.index;
+        if (index != null && Arrays.stream(modes).allMatch(m -> m == AccessMode.READ)) {
+            findIndexEntry(index, resolveTarget(path));
+            return;
+        }
+        getBaseProvider().checkAccess(path.getTargetPath(), modes);
+    }
+
+    DirectoryStream<Path> newDirectoryStream(ModulePath dir, DirectoryStream.Filter<? super Path> filter) throws IOException {
+        var index = this.index;
+        if (index != null) {
+            var entry = findIndexEntry(index, resolveTarget(dir));
+            if (!index.isDirectory(entry)) {
+                throw new NotDirectoryException(dir.toString());
+            }
+            return new IndexDirectoryStream(dir, index, entry, filter, true);
+        }
+        var ds = getBaseProvider().newDirectoryStream(dir.getTargetPath(), p -> true);
+        return new ModuleDirectoryStream(dir, ds, filter);
+    }
+
+    /**
+     * Returns a stamp that changes whenever the contents of a file change.
+     * Backends that can't change while being open don't have to check anything.
+     */
+    long getContentStamp(ModulePath path) throws IOException {
+        return 0;
+    }
+
+    SeekableByteChannel newByteChannel(ModulePath path, Set<? extends OpenOption> options, FileAttribute<?>... attrs) throws IOException {
+        var channel = readChannel(path, options, attrs);
+        recordAccess(path);
+        return channel;
+    }
+
+    /**
+     * Adds an opened file to the recorded profile, which every way of opening a file has to call.
+     */
+    void recordAccess(ModulePath path) {
+        if (recorder != null) {
+            recorder.record(resolveTarget(path));
+        }
+    }
+
+    private SeekableByteChannel readChannel(ModulePath path, Set<? extends OpenOption> options, FileAttribute<?>... attrs) throws IOException {
+        if (cache == null) {
+            return openChannel(path, options, attrs);
+        }
+
+        var key = resolveTarget(path);
+        var stamp = getContentStamp(path);
+        var cached = cache.get(key, stamp);
+        if (cached != null) {
+            return new ByteBufferChannel(ByteBuffer.wrap(cached));
+        }
+
+        var channel = openChannel(path, options, attrs);
+        if (channel.size() > cache.getMaxEntryWeight()) {
+            return channel;
+        }
+
+        var data = readFully(channel);
+        cache.put(key, data, stamp);
+        return new ByteBufferChannel(ByteBuffer.wrap(data));
+    }
+
+    static byte[] readFully(SeekableByteChannel channel) throws IOException {
+        try (channel) {
+            var buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) == -1) {
+                    break;
+                }
+            }
+            return buffer.position() == buffer.capacity() ? buffer.array() : Arrays.copyOf(buffer.array(), buffer.position());
+        }
+    }
+
+    SeekableByteChannel openChannel(ModulePath path, Set<? extends OpenOption> options, FileAttribute<?>... attrs) throws IOException {
+        return getBaseProvider().newByteChannel(path.getTargetPath(), options, attrs);
+    }
+
+    FileChannel newFileChannel(ModulePath path, Set<? extends OpenOption> options, FileAttribute<?>... attrs) throws IOException {
+        var channel = openFileChannel(path, options, attrs);
+        recordAccess(path);
+        return channel;
+    }
+
+    /**
+     * Opens a file channel for a file, which backends should override if the contents can be mapped.
+     */
+    FileChannel openFileChannel(ModulePath path, Set<? extends OpenOption> options, FileAttribute<?>... attrs) throws IOException {
+        return new SeekableFileChannel(readChannel(path, options, attrs));
+    }
+
+    /**
+     * Returns the executor configured for asynchronous reads, or null if there is none.
+     */
+    ExecutorService getAsyncExecutor() {
+        return asyncExecutor;
+    }
+
+    ExecutorFileChannel newExecutorChannel(SeekableByteChannel channel, ExecutorService executor) {
+        var e = executor != null ? executor : asyncExecutor != null ? asyncExecutor : ExecutorFileChannel.getDefaultExecutor();
+        return new ExecutorFileChannel(channel, e);
+    }
+
+    AsynchronousFileChannel newAsynchronousFileChannel(
+            ModulePath path, Set<? extends OpenOption> options, ExecutorService executor, FileAttribute<?>... attrs) throws IOException {
+        return newExecutorChannel(newByteChannel(path, options, attrs), executor);
+    }
+
+    /**
+     * Returns the CRC-32 of a file if the backend knows it without reading the file.
+     */
+    OptionalLong getCrc(ModulePath path) throws IOException {
+        var index = this.index;
+        if (index != null) {
+            var entry = index.find(resolveTarget(path));
+            if (entry != -1 && index.getCrc(entry) != -1) {
+                return OptionalLong.of(index.getCrc(entry));
+            }
+        }
+        return OptionalLong.empty();
+    }
+
+    /**
+     * Writes the entire contents of a file to the target channel, starting at its current position.
+     */
+    long transferTo(ModulePath path, FileChannel target) throws IOException {
+        long start = target.position();
+        long transferred = 0;
+        try (var channel = openChannel(path, Set.of(StandardOpenOption.READ))) {
+            if (channel instanceof FileChannel) {
+                var source = (FileChannel) channel;
+                long size = source.size();
+                long n;
+                while (transferred < size && (n = source.transferTo(transferred, size - transferred, target)) > 0) {
+                    transferred += n;
+                }
+            } else {
+                long n;
+                while ((n = target.transferFrom(channel, start + transferred, Long.MAX_VALUE)) > 0) {
+                    transferred += n;
+                }
+                target.position(start + transferred);
+            }
+        }
+        return transferred;
+    }
+
+    public Optional<CacheStats> getCacheStats() {
+        return Optional.ofNullable(cache).map(ResourceCache::stats);
+    }
+
+    /**
+     * Returns a snapshot of the latencies of all operations that were performed on this file system.
+     */
+    public FileSystemStats stats() {
+        return metrics.snapshot(module, getBackendName());
+    }
+
+    FileSystemMetrics getMetrics() {
+        return metrics;
+    }
+
+    void record(FileSystemStats.Operation operation, long start, Object event, ModulePath path) {
+        long nanos = System.nanoTime() - start;
+        var name = path != null ? resolveTarget(path).toRelativeString() : null;
+        if (operation == FileSystemStats.Operation.READ) {
+            metrics.recordRead(name, nanos);
+        } else {
+            metrics.record(operation, nanos);
+        }
+        FileSystemEvents.commit(event, module, getBackendName(), name);
     }
 
     ModulePath getRoot() {
-        return new ModulePath(this, basePath);
+        return root;
+    }
+
+    /**
+     * Returns a shared instance of a name segment. The table is bounded, as paths can also be created from arbitrary names
+     * that don't exist in the module, so names beyond the limit are used as they are.
+     */
+    String intern(String name) {
+        var existing = names.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        if (names.size() >= MAX_INTERNED_NAMES) {
+            return name;
+        }
+        existing = names.putIfAbsent(name, name);
+        return existing != null ? existing : name;
+    }
+
+    /**
+     * Returns the path that an operation on a path actually targets.
+     * Relative paths are resolved against the module root, as the module has no working directory.
+     */
+    static ModulePath resolveTarget(ModulePath path) {
+        return (ModulePath) path.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Returns the entry that provides the contents of a path, which is a versioned entry for overridden files of multi-release jars.
+     */
+    ModulePath resolveEntry(ModulePath path) {
+        var target = resolveTarget(path);
+        if (versions.isEmpty()) {
+            return target;
+        }
+
+        var versioned = versions.get(target.toRelativeString());
+        return versioned != null ? getPath(versioned) : target;
+    }
+
+    /**
+     * Returns the path that a path resolves to in the backing file system.
+     */
+    Path toTargetPath(ModulePath path) throws IOException {
+        return path.getTargetPath();
+    }
+
+    Path toWrappedPath(ModulePath path) {
+        if (path.getSegmentCount() == 0) {
+            return path.isAbsolute() ? getBasePath() : getBasePath().getFileSystem().getPath("");
+        }
+
+        var rest = new String[path.getSegmentCount() - 1];
+        for (int i = 0; i < rest.length; i++) {
+            rest[i] = path.getSegment(i + 1);
+        }
+        var relative = getBasePath().getFileSystem().getPath(path.getSegment(0), rest);
+        return path.isAbsolute() ? getBasePath().resolve(relative) : relative;
+    }
+
+    ModulePath toRealPath(ModulePath path, LinkOption... options) throws IOException {
+        return fromWrappedPath(path.getWrappedPath().toRealPath(options));
+    }
+
+    FileStore getFileStore(ModulePath path) throws IOException {
+        if (!Files.exists(path)) {
+            throw new NoSuchFileException(path.toString());
+        }
+        return getFileStores().iterator().next();
+    }
+
+    String getBackendSeparator() {
+        return getBasePath().getFileSystem().getSeparator();
+    }
+
+    ModulePath parsePath(String path) {
+        var separator = getBackendSeparator();
+        var parts = separator.equals("/") ? path.split("/") : path.split("[/" + Pattern.quote(separator) + "]");
+        var segments = new ArrayList<String>(parts.length);
+        for (var part : parts) {
+            if (!part.isEmpty()) {
+                segments.add(intern(part));
+            }
+        }
+        return new ModulePath(this, segments.toArray(String[]::new), path.startsWith("/"));
+    }
+
+    ModulePath fromWrappedPath(Path wrapped) {
+        var absolute = wrapped.isAbsolute();
+        if (absolute) {
+            if (!wrapped.startsWith(getBasePath())) {
+                throw new IllegalArgumentException("Path " + wrapped + " is not located inside module " + module);
+            }
+            wrapped = getBasePath().relativize(wrapped);
+        }
+
+        var segments = new ArrayList<String>(wrapped.getNameCount());
+        for (var name : wrapped) {
+            var s = name.toString();
+            if (!s.isEmpty()) {
+                segments.add(intern(s));
+            }
+        }
+        return new ModulePath(this, segments.toArray(String[]::new), absolute);
     }
 
     @Override
     public boolean isReadOnly() {
-        return basePath.getFileSystem().isReadOnly();
+        return getBasePath().getFileSystem().isReadOnly();
     }
 
     @Override
     public String getSeparator() {
-        return basePath.getFileSystem().getSeparator();
+        return "/";
     }
 
     @Override
     public Iterable<Path> getRootDirectories() {
-        return Set.of(new ModulePath(this, basePath));
+        return Set.of(root);
     }
 
     @Override
     public Iterable<FileStore> getFileStores() {
-        var store = basePath.getFileSystem().getFileStores().iterator().next();
+        var store = getBasePath().getFileSystem().getFileStores().iterator().next();
         return List.of(new ModuleFileStore(store, this));
     }
 
     @Override
     public Set<String> supportedFileAttributeViews() {
-        return basePath.getFileSystem().supportedFileAttributeViews();
+        return getBasePath().getFileSystem().supportedFileAttributeViews();
     }
 
     @Override
     public ModulePath getPath(String first, String... more) {
-        var current = basePath.resolve(first);
-        for (var m : more) {
-            current = current.resolve(m);
-        }
-        return new ModulePath(this, current);
+        var joined = more.length == 0 ? first : first + "/" + String.join("/", more);
+        return (ModulePath) root.resolve(parsePath(joined));
     }
 
     @Override
     public PathMatcher getPathMatcher(String syntaxAndPattern) {
-        return basePath.getFileSystem().getPathMatcher(syntaxAndPattern);
+        var colon = syntaxAndPattern.indexOf(':');
+        if (colon > 0 && syntaxAndPattern.substring(0, colon).equalsIgnoreCase("glob")) {
+            return Glob.compile(syntaxAndPattern.substring(colon + 1));
+        }
+        return getBasePath().getFileSystem().getPathMatcher(syntaxAndPattern);
     }
 
     @Override
     public UserPrincipalLookupService getUserPrincipalLookupService() {
-        return basePath.getFileSystem().getUserPrincipalLookupService();
+        return getBasePath().getFileSystem().getUserPrincipalLookupService();
     }
 
     @Override
     public WatchService newWatchService() throws IOException {
-        return basePath.getFileSystem().newWatchService();
+        return getBasePath().getFileSystem().newWatchService();
     }
 
     public String getModule() {
@@ -1,10 +1,12 @@
 package io.xpipe.modulefs;
 
 import java.io.IOException;
-import java.io.UncheckedIOException;
+import java.lang.ref.WeakReference;
 import java.lang.module.ModuleReference;
 import java.lang.module.ResolvedModule;
 import java.net.URI;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
@@ -12,13 +14,33 @@ import java.nio.file.attribute.FileAttribute;
 import java.nio.file.attribute.FileAttributeView;
 import java.nio.file.spi.FileSystemProvider;
 import java.util.*;
-import java.util.stream.Stream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class ModuleFileSystemProvider extends FileSystemProvider {
 
-    private final Map<String, FileSystem> filesystems = new HashMap<>();
+    // File systems are only weakly reachable from here, so that unclosed ones can still be reclaimed
+    private final Map<String, Queue<WeakReference<ModuleFileSystem>>> filesystems = new ConcurrentHashMap<>();
+    private final Map<String, LazyModuleFileSystem> lazyFilesystems = new ConcurrentHashMap<>();
+    private final ModuleResolver resolver = new ModuleResolver();
+    private final AtomicBoolean imageRequested = new AtomicBoolean();
+
+    /**
+     * Opens the image on the first file system request if requested.
+     * This can't happen in the constructor, as the jrt provider can't be looked up while the installed providers are loaded.
+     */
+    private void openImageIfEager() {
+        if (!Boolean.getBoolean(JrtModuleFileSystem.EAGER_PROPERTY) || !imageRequested.compareAndSet(false, true)) {
+            return;
+        }
 
-    public ModuleFileSystemProvider() {
+        try {
+            JrtModuleFileSystem.openEagerly();
+        } catch (IOException ignored) {
+            // The image will be opened again lazily, which reports the error to the caller
+        }
     }
 
     @Override
@@ -56,111 +78,227 @@ public class ModuleFileSystemProvider extends FileSystemProvider {
     }
 
     private Optional<ResolvedModule> resolveModule(String name, ModuleLayer l) {
-        var found = l.configuration().modules().stream()
-                .filter(r -> r.name().equals(name))
-                .findFirst();
-        if (found.isPresent()) {
-            return found;
-        }
+        return resolver.resolve(name, l);
+    }
 
-        for (var p : l.parents()) {
-            var r = resolveModule(name, p);
-            if (r.isPresent()) {
-                return r;
-            }
-        }
+    Collection<ResolvedModule> listModules(ModuleLayer layer) {
+        return resolver.list(layer);
+    }
 
-        return Optional.empty();
+    Optional<URI> locate(ModuleReference reference) {
+        return resolver.locate(reference);
     }
 
     @Override
     public ModuleFileSystem newFileSystem(URI uri, Map<String, ?> env) throws IOException {
+        return newFileSystem(uri, env, true);
+    }
+
+    /**
+     * Opens a file system, which is only returned by {@link #getFileSystem(URI)} if it is registered.
+     */
+    ModuleFileSystem newFileSystem(URI uri, Map<String, ?> env, boolean register) throws IOException {
         checkUri(uri);
+        openImageIfEager();
 
         var layer = env.containsKey("layer") ? (ModuleLayer) env.get("layer") : ModuleLayer.boot();
         var moduleLocation = env.containsKey("location") ? (URI) env.get("location") : null;
         String moduleName = uri.getPath().substring(1);
 
+        if (moduleName.equals(LayerFileSystem.NAME)) {
+            long start = System.nanoTime();
+            var event = FileSystemEvents.begin(FileSystemStats.Operation.OPEN);
+            return initialize(LayerFileSystem.create(this, layer, env), env, start, event, register);
+        }
+
+        long resolveNanos = -1;
         if (moduleLocation == null) {
+            long start = System.nanoTime();
+            var event = FileSystemEvents.begin(FileSystemStats.Operation.RESOLVE);
             var loc = resolveModule(moduleName, layer)
                     .orElseThrow(() -> new FileSystemNotFoundException(
                             "Module " + moduleName + " was not resolved"));
-            moduleLocation = loc.reference().location().orElseThrow(() -> new IllegalArgumentException(
+            resolveNanos = System.nanoTime() - start;
+            FileSystemEvents.commit(event, moduleName, null, null);
+            moduleLocation = locate(loc.reference()).orElseThrow(() -> new IllegalArgumentException(
                     "Location of module " + moduleName + " is unknown"));
         }
 
-        var scheme = moduleLocation.getScheme();
-        var fs = Stream.of(
-                JrtModuleFileSystem.create(moduleName, this, uri, moduleLocation),
-                JarModuleFileSystem.create(moduleName, this, moduleLocation),
-                ExplodedModuleFileSystem.create(moduleName, this, moduleLocation))
-                .flatMap(Optional::stream)
-                .findFirst()
-                .orElseThrow(() -> new IllegalArgumentException(
-                        "Unsupported module file system type " + scheme));
-        filesystems.put(moduleName, fs);
+        long start = System.nanoTime();
+        var event = FileSystemEvents.begin(FileSystemStats.Operation.OPEN);
+        var fs = initialize(createFileSystem(uri, moduleName, moduleLocation, env), env, start, event, register);
+        if (resolveNanos != -1) {
+            fs.getMetrics().record(FileSystemStats.Operation.RESOLVE, resolveNanos);
+        }
+        return fs;
+    }
+
+    private ModuleFileSystem initialize(
+            ModuleFileSystem fs, Map<String, ?> env, long start, Object event, boolean register) throws IOException {
+        try {
+            fs.initialize(env);
+        } catch (IOException | RuntimeException e) {
+            fs.close();
+            throw e;
+        }
+        fs.record(FileSystemStats.Operation.OPEN, start, event, null);
+        if (register) {
+            register(fs);
+        }
         return fs;
     }
 
+    private ModuleFileSystem createFileSystem(URI uri, String moduleName, URI location, Map<String, ?> env) throws IOException {
+        Optional<? extends ModuleFileSystem> fs = JrtModuleFileSystem.create(moduleName, this, uri, location);
+        if (fs.isEmpty()) {
+            fs = NestedJarModuleFileSystem.create(moduleName, this, location);
+        }
+        if (fs.isEmpty()) {
+            fs = MappedJarModuleFileSystem.create(moduleName, this, location, env);
+        }
+        if (fs.isEmpty()) {
+            fs = JarModuleFileSystem.create(moduleName, this, location);
+        }
+        if (fs.isEmpty()) {
+            fs = ExplodedModuleFileSystem.create(moduleName, this, location);
+        }
+        return fs.orElseThrow(() -> new IllegalArgumentException(
+                "Unsupported module file system type " + location.getScheme()));
+    }
+
+    private void register(ModuleFileSystem fs) {
+        var open = filesystems.get(fs.getModule());
+        if (open == null) {
+            var created = new ConcurrentLinkedQueue<WeakReference<ModuleFileSystem>>();
+            open = filesystems.putIfAbsent(fs.getModule(), created);
+            if (open == null) {
+                open = created;
+            }
+        }
+        open.add(new WeakReference<>(fs));
+    }
+
+    void unregister(ModuleFileSystem fs) {
+        var open = filesystems.get(fs.getModule());
+        if (open != null) {
+            open.removeIf(ref -> ref.get() == null || ref.get() == fs);
+        }
+    }
+
     @Override
-    public FileSystem getFileSystem(URI uri) {
+    public ModuleFileSystem getFileSystem(URI uri) {
         checkUri(uri);
 
-        synchronized (filesystems) {
-            var moduleName = uri.getPath().substring(1);
-            var fs = filesystems.get(moduleName);
-            if (fs == null) {
-                throw new FileSystemNotFoundException("No FileSystem for module " + moduleName + " found");
-            }
+        var moduleName = uri.getPath().substring(1);
+        var fs = findOpen(moduleName);
+        if (fs == null) {
+            throw new FileSystemNotFoundException("No open FileSystem for module " + moduleName + " found");
+        }
+        return fs;
+    }
 
-            if (!fs.isOpen()) {
-                filesystems.remove(moduleName);
-                throw new FileSystemNotFoundException("Existing FileSystem for module " + moduleName + " is closed");
+    private ModuleFileSystem findOpen(String moduleName) {
+        var open = filesystems.get(moduleName);
+        if (open != null) {
+            for (var ref : open) {
+                var fs = ref.get();
+                if (fs != null && fs.isOpen()) {
+                    return fs;
+                }
+                open.remove(ref);
             }
+        }
+        return null;
+    }
+
+    /**
+     * Returns a path for a URI of the form {@code module:/<module>/<path>} or {@code module:/<module>!/<path>}.
+     * If no file system of the module is open, the path belongs to a shared file system
+     * that only opens the module once a file is accessed.
+     */
+    @Override
+    public Path getPath(URI uri) {
+        if (!uri.getScheme().equalsIgnoreCase(getScheme())) {
+            throw new IllegalArgumentException("URI does not match this provider");
+        }
+        var path = uri.getPath();
+        if (path == null || !path.startsWith("/")) {
+            throw new IllegalArgumentException("Path component should start with '/'");
+        }
+
+        int slash = path.indexOf('/', 1);
+        int bang = path.indexOf('!', 1);
+        int end = bang != -1 && (slash == -1 || bang < slash) ? bang : slash;
+        var moduleName = end == -1 ? path.substring(1) : path.substring(1, end);
+        var inModulePath = end == -1 ? "" : path.substring(end == bang ? end + 1 : end);
+
+        var fs = findOpen(moduleName);
+        if (fs == null) {
+            fs = getLazyFileSystem(moduleName);
+        }
+        return fs.getPath(inModulePath);
+    }
 
+    private ModuleFileSystem getLazyFileSystem(String moduleName) {
+        var fs = lazyFilesystems.get(moduleName);
+        if (fs != null && fs.isOpen()) {
             return fs;
         }
+
+        // Resolving a module name is a cheap lookup, so unknown modules are still reported right away
+        if (!moduleName.equals(LayerFileSystem.NAME) && resolveModule(moduleName, ModuleLayer.boot()).isEmpty()) {
+            throw new FileSystemNotFoundException("Module " + moduleName + " was not resolved");
+        }
+        return lazyFilesystems.compute(moduleName, (k, v) -> v != null && v.isOpen() ? v : new LazyModuleFileSystem(k, this));
     }
 
     @Override
-    public Path getPath(URI uri) {
-        var path = uri.getPath().substring(1);
-        var moduleName = path;
-        var moduleNameEnd = path.indexOf("/");
-        if (moduleNameEnd != -1) {
-            moduleName = moduleName.substring(0, moduleNameEnd);
+    public SeekableByteChannel newByteChannel(Path path, Set<? extends OpenOption> options, FileAttribute<?>... attrs) throws IOException {
+        if (!options.isEmpty() && !options.equals(Set.of(StandardOpenOption.READ))) {
+            throw new UnsupportedOperationException();
         }
-        var inModulePath = path.substring(moduleNameEnd + 1);
 
+        var mp = getModulePath(path);
+        long start = System.nanoTime();
+        var event = FileSystemEvents.begin(FileSystemStats.Operation.READ);
         try {
-            var fs = getFileSystem(URI.create("module:/" + moduleName));
-            return fs.getPath(inModulePath);
-        } catch (FileSystemNotFoundException e) {
-            try {
-                var fs = newFileSystem(URI.create("module:/" + moduleName), Map.of());
-                return fs.getPath(inModulePath);
-            } catch (IOException ioException) {
-                throw new UncheckedIOException(ioException);
-            }
+            return mp.getModuleFileSystem().newByteChannel(mp, options, attrs);
+        } finally {
+            mp.getModuleFileSystem().record(FileSystemStats.Operation.READ, start, event, mp);
+        }
+    }
+
+    @Override
+    public FileChannel newFileChannel(Path path, Set<? extends OpenOption> options, FileAttribute<?>... attrs) throws IOException {
+        if (!options.isEmpty() && !options.equals(Set.of(StandardOpenOption.READ))) {
+            throw new UnsupportedOperationException();
         }
 
+        var mp = getModulePath(path);
+        return mp.getModuleFileSystem().newFileChannel(mp, options, attrs);
     }
 
     @Override
-    public SeekableByteChannel newByteChannel(Path path, Set<? extends OpenOption> options, FileAttribute<?>... attrs) throws IOException {
+    public AsynchronousFileChannel newAsynchronousFileChannel(
+            Path path, Set<? extends OpenOption> options, ExecutorService executor, FileAttribute<?>... attrs) throws IOException {
         if (!options.isEmpty() && !options.equals(Set.of(StandardOpenOption.READ))) {
             throw new UnsupportedOperationException();
         }
 
-        var mp = ((ModulePath) path);
-        return mp.getModuleFileSystem().getBaseProvider().newByteChannel(mp.getWrappedPath(), options, attrs);
+        var mp = getModulePath(path);
+        return mp.getModuleFileSystem().newAsynchronousFileChannel(mp, options, executor, attrs);
     }
 
     @Override
     public DirectoryStream<Path> newDirectoryStream(Path dir, DirectoryStream.Filter<? super Path> filter) throws IOException {
-        var mp = ((ModulePath) dir);
-        var ds = mp.getModuleFileSystem().getBaseProvider().newDirectoryStream(mp.getWrappedPath(), filter);
-        return new ModuleDirectoryStream(mp.getModuleFileSystem(), ds);
+        var mp = getModulePath(dir);
+        long start = System.nanoTime();
+        var event = FileSystemEvents.begin(FileSystemStats.Operation.LIST);
+        try {
+            return mp.getModuleFileSystem().newDirectoryStream(mp, filter);
+        } finally {
+            mp.getModuleFileSystem().record(FileSystemStats.Operation.LIST, start, event, mp);
+        }
     }
 
     private ModulePath getModulePath(Path path) {
@@ -171,75 +309,90 @@ public class ModuleFileSystemProvider extends FileSystemProvider {
         return (ModulePath) path;
     }
 
-    private FileSystemProvider getBaseProvider(Path path) {
-        return getModulePath(path).getModuleFileSystem().getBaseProvider();
+    private Path getTargetPath(Path path) throws IOException {
+        var mp = getModulePath(path);
+        return mp.getModuleFileSystem().toTargetPath(mp);
+    }
+
+    private static FileSystemProvider provider(Path target) {
+        return target.getFileSystem().provider();
     }
 
     @Override
     public void createDirectory(Path dir, FileAttribute<?>... attrs) throws IOException {
-        getBaseProvider(dir).createDirectory(getModulePath(dir).getWrappedPath(), attrs);
+        var target = getTargetPath(dir);
+        provider(target).createDirectory(target, attrs);
     }
 
     @Override
     public void delete(Path path) throws IOException {
-        getBaseProvider(path).delete(getModulePath(path).getWrappedPath());
+        var target = getTargetPath(path);
+        provider(target).delete(target);
     }
 
     @Override
     public void copy(Path source, Path target, CopyOption... options) throws IOException {
-        getBaseProvider(source).copy(getModulePath(source).getWrappedPath(),
-                getModulePath(target).getWrappedPath(), options);
+        var sourceTarget = getTargetPath(source);
+        provider(sourceTarget).copy(sourceTarget, getTargetPath(target), options);
     }
 
     @Override
     public void move(Path source, Path target, CopyOption... options) throws IOException {
-        getBaseProvider(source).move(getModulePath(source).getWrappedPath(),
-                getModulePath(target).getWrappedPath(), options);
+        var sourceTarget = getTargetPath(source);
+        provider(sourceTarget).move(sourceTarget, getTargetPath(target), options);
     }
 
     @Override
     public boolean isSameFile(Path path, Path path2) throws IOException {
-        return getBaseProvider(path).isSameFile(
-                getModulePath(path).getWrappedPath(),
-                getModulePath(path2).getWrappedPath());
+        var target = getTargetPath(path);
+        return provider(target).isSameFile(target, getTargetPath(path2));
     }
 
     @Override
     public boolean isHidden(Path path) throws IOException {
-        return getBaseProvider(path).isHidden(getModulePath(path).getWrappedPath());
+        var target = getTargetPath(path);
+        return provider(target).isHidden(target);
     }
 
     @Override
     public FileStore getFileStore(Path path) throws IOException {
-        if (!Files.exists(path)) {
-            throw new NoSuchFileException(path.toString());
-        }
-
-        return getModulePath(path).getFileSystem().getFileStores().iterator().next();
+        var mp = getModulePath(path);
+        return mp.getModuleFileSystem().getFileStore(mp);
     }
 
     @Override
     public void checkAccess(Path path, AccessMode... modes) throws IOException {
-        getBaseProvider(path).checkAccess(getModulePath(path).getWrappedPath(), modes);
+        var mp = getModulePath(path);
+        mp.getModuleFileSystem().checkAccess(mp, modes);
     }
 
     @Override
     public <V extends FileAttributeView> V getFileAttributeView(Path path, Class<V> type, LinkOption... options) {
-        return getBaseProvider(path).getFileAttributeView(getModulePath(path).getWrappedPath(), type, options);
+        Path target;
+        try {
+            target = getTargetPath(path);
+        } catch (IOException e) {
+            // Views of files that don't exist can't be backed by any file system
+            return null;
+        }
+        return provider(target).getFileAttributeView(target, type, options);
     }
 
     @Override
     public <A extends BasicFileAttributes> A readAttributes(Path path, Class<A> type, LinkOption... options) throws IOException {
-        return getBaseProvider(path).readAttributes(getModulePath(path).getWrappedPath(), type, options);
+        var mp = getModulePath(path);
+        return mp.getModuleFileSystem().readAttributes(mp, type, options);
     }
 
     @Override
     public Map<String, Object> readAttributes(Path path, String attributes, LinkOption... options) throws IOException {
-        return getBaseProvider(path).readAttributes(getModulePath(path).getWrappedPath(), attributes, options);
+        var target = getTargetPath(path);
+        return provider(target).readAttributes(target, attributes, options);
     }
 
     @Override
     public void setAttribute(Path path, String attribute, Object value, LinkOption... options) throws IOException {
-        getBaseProvider(path).setAttribute(getModulePath(path).getWrappedPath(), attribute, value, options);
+        var target = getTargetPath(path);
+        provider(target).setAttribute(target, attribute, value, options);
     }
 }
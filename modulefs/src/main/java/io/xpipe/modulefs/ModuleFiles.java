@@ -0,0 +1,320 @@
+package io.xpipe.modulefs;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.CRC32;
+
+/**
+ * Operations on module file systems that go beyond what {@link Files} offers.
+ */
+public final class ModuleFiles {
+
+    private ModuleFiles() {
+    }
+
+    /**
+     * Reads the attributes of a path that a traversal has just listed, which index listings already provide.
+     * Other listings fall back to the backend, which only has to go to disk for exploded modules.
+     */
+    static BasicFileAttributes readListedAttributes(Path child, LinkOption... options) throws IOException {
+        if (child instanceof ModulePath) {
+            var listed = ((ModulePath) child).getListedAttributes(options);
+            if (listed != null) {
+                return listed;
+            }
+        }
+        return Files.readAttributes(child, BasicFileAttributes.class, options);
+    }
+
+    /**
+     * Returns a stream of all paths in the file tree rooted at the given path, including the start path itself.
+     * Unlike {@link Files#walk(Path, FileVisitOption...)}, the stream splits into whole subtrees
+     * and therefore scales when used as a parallel stream.
+     */
+    public static Stream<Path> stream(ModulePath start) throws IOException {
+        return StreamSupport.stream(new ModuleTreeSpliterator(start), false);
+    }
+
+    /**
+     * Returns a stream of all paths below a directory that match a glob pattern.
+     * The pattern uses the syntax of {@link FileSystem#getPathMatcher(String)} and is matched against paths relative to the directory.
+     * Only subtrees that can contain matches are visited, and names without wildcards are looked up directly.
+     */
+    public static Stream<Path> find(ModulePath root, String glob) throws IOException {
+        var compiled = Glob.compile(glob);
+        if (compiled.isAbsolute()) {
+            throw new IllegalArgumentException("Glob " + glob + " is not relative");
+        }
+        if (!Files.isDirectory(root)) {
+            throw Files.exists(root) ? new NotDirectoryException(root.toString()) : new NoSuchFileException(root.toString());
+        }
+
+        if (!compiled.isSegmented()) {
+            return stream(root).filter(p -> !p.equals(root) && compiled.matchesRelative(root.relativize(p).toString()));
+        }
+        return StreamSupport.stream(new GlobSpliterator(root, compiled), false);
+    }
+
+    /**
+     * Walks a file tree like {@link Files#walkFileTree(Path, FileVisitor)}, but visits subtrees concurrently.
+     * The visitor therefore has to be thread-safe. Directories are only post-visited after all their entries,
+     * but no order is guaranteed between siblings. {@link FileVisitResult#SKIP_SIBLINGS} stops the visit of
+     * the remaining entries of the current directory that have not been visited yet.
+     *
+     * @param parallelism the number of threads to use for the walk
+     */
+    public static void walkParallel(ModulePath start, FileVisitor<? super Path> visitor, int parallelism) throws IOException {
+        var walk = new ParallelWalk(visitor);
+        var pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(walk.new Task(start, Files.readAttributes(start, BasicFileAttributes.class)));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            walk.terminated.set(true);
+            shutdown(pool);
+        }
+    }
+
+    /**
+     * Stops all tasks that are still running after one of them failed, so that none of them accesses the visitor or target afterwards.
+     */
+    private static void shutdown(ForkJoinPool pool) {
+        pool.shutdownNow();
+        try {
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Copies a file tree out of a module file system, for example to a cache directory on the default file system.
+     * Files are copied concurrently, and files in the target that already have the same size and CRC-32 are skipped.
+     */
+    public static void extract(ModulePath source, Path target) throws IOException {
+        extract(source, target, Runtime.getRuntime().availableProcessors(), (s, t, size, skipped) -> {});
+    }
+
+    /**
+     * Copies a file tree out of a module file system, for example to a cache directory on the default file system.
+     * Files are copied concurrently, and files in the target that already have the same size and CRC-32 are skipped.
+     * Only files of exploded modules and stored entries of jars with the mapped backend are copied without going through the heap,
+     * all other entries are read into buffers and written with {@link FileChannel#transferFrom}.
+     *
+     * @param parallelism the number of threads to use for copying
+     * @param listener receives a notification for every extracted file
+     */
+    public static void extract(ModulePath source, Path target, int parallelism, ExtractionListener listener) throws IOException {
+        var start = ModuleFileSystem.resolveTarget(source);
+        if (!Files.isDirectory(start)) {
+            if (target.getParent() != null) {
+                Files.createDirectories(target.getParent());
+            }
+            extractFile(start, target, Files.size(start), listener);
+            return;
+        }
+
+        // Directories are created upfront, so that the files can be copied in any order
+        var files = new ArrayList<Path>();
+        try (var stream = stream(start)) {
+            for (var it = stream.iterator(); it.hasNext(); ) {
+                var p = it.next();
+                if (Files.isDirectory(p)) {
+                    Files.createDirectories(getTarget(start, target, p));
+                } else {
+                    files.add(p);
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        var pool = new ForkJoinPool(parallelism);
+        var failed = new AtomicBoolean();
+        try {
+            pool.submit(() -> files.parallelStream().forEach(f -> {
+                if (failed.get()) {
+                    return;
+                }
+
+                try {
+                    extractFile((ModulePath) f, getTarget(start, target, f), Files.size(f), listener);
+                } catch (IOException e) {
+                    failed.set(true);
+                    throw new UncheckedIOException(e);
+                }
+            })).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            failed.set(true);
+            shutdown(pool);
+        }
+    }
+
+    private static Path getTarget(ModulePath start, Path target, Path path) {
+        var result = target;
+        for (var name : start.relativize(path)) {
+            result = result.resolve(name.toString());
+        }
+        return result;
+    }
+
+    private static void extractFile(ModulePath file, Path target, long size, ExtractionListener listener) throws IOException {
+        if (isUpToDate(file, target, size)) {
+            listener.onFileExtracted(file, target, size, true);
+            return;
+        }
+
+        try (var channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            file.getModuleFileSystem().transferTo(file, channel);
+        }
+        listener.onFileExtracted(file, target, size, false);
+    }
+
+    private static boolean isUpToDate(ModulePath file, Path target, long size) throws IOException {
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(target, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        if (!attrs.isRegularFile() || attrs.size() != size) {
+            return false;
+        }
+
+        var known = file.getModuleFileSystem().getCrc(file);
+        var sourceCrc = known.isPresent() ? known.getAsLong() : computeCrc(Files.newByteChannel(file));
+        return sourceCrc == computeCrc(FileChannel.open(target, StandardOpenOption.READ));
+    }
+
+    private static long computeCrc(ReadableByteChannel channel) throws IOException {
+        try (channel) {
+            var crc = new CRC32();
+            var buffer = ByteBuffer.allocate(8192);
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+            }
+            return crc.getValue();
+        }
+    }
+
+    private static final class ParallelWalk {
+
+        private final FileVisitor<? super Path> visitor;
+        private final AtomicBoolean terminated = new AtomicBoolean();
+
+        private ParallelWalk(FileVisitor<? super Path> visitor) {
+            this.visitor = visitor;
+        }
+
+        private boolean check(FileVisitResult result) {
+            if (result == FileVisitResult.TERMINATE) {
+                terminated.set(true);
+            }
+            return result == FileVisitResult.CONTINUE && !terminated.get();
+        }
+
+        private final class Task extends RecursiveAction {
+
+            private static final long serialVersionUID = 1L;
+
+            private final Path path;
+            private final BasicFileAttributes attrs;
+
+            private Task(Path path, BasicFileAttributes attrs) {
+                this.path = path;
+                this.attrs = attrs;
+            }
+
+            @Override
+            protected void compute() {
+                try {
+                    if (!terminated.get()) {
+                        visit();
+                    }
+                } catch (IOException | RuntimeException e) {
+                    // Siblings that are still running stop as soon as possible
+                    terminated.set(true);
+                    throw e instanceof IOException ? new UncheckedIOException((IOException) e) : (RuntimeException) e;
+                }
+            }
+
+            private void visit() throws IOException {
+                if (!attrs.isDirectory()) {
+                    check(visitor.visitFile(path, attrs));
+                    return;
+                }
+
+                if (!check(visitor.preVisitDirectory(path, attrs))) {
+                    return;
+                }
+
+                var subtasks = new ArrayList<Task>();
+                IOException failure = null;
+                try (var ds = Files.newDirectoryStream(path)) {
+                    for (var child : ds) {
+                        if (terminated.get()) {
+                            break;
+                        }
+
+                        BasicFileAttributes childAttrs;
+                        try {
+                            // Like Files.walkFileTree, links are visited as files, so that they can't create cycles
+                            childAttrs = readListedAttributes(child, LinkOption.NOFOLLOW_LINKS);
+                        } catch (IOException e) {
+                            if (!check(visitor.visitFileFailed(child, e))) {
+                                break;
+                            }
+                            continue;
+                        }
+
+                        if (childAttrs.isDirectory()) {
+                            var task = new Task(child, childAttrs);
+                            task.fork();
+                            subtasks.add(task);
+                        } else {
+                            var result = visitor.visitFile(child, childAttrs);
+                            if (result != FileVisitResult.SKIP_SUBTREE && !check(result)) {
+                                break;
+                            }
+                        }
+                    }
+                } catch (IOException | DirectoryIteratorException e) {
+                    failure = e instanceof DirectoryIteratorException ? ((DirectoryIteratorException) e).getCause() : (IOException) e;
+                }
+
+                for (var task : subtasks) {
+                    task.join();
+                }
+
+                if (!terminated.get()) {
+                    check(visitor.postVisitDirectory(path, failure));
+                }
+            }
+        }
+    }
+}
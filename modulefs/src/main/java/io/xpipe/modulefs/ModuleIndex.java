@@ -0,0 +1,617 @@
+package io.xpipe.modulefs;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * An immutable index of all entries of a module.
+ * Entries are stored breadth first, so the children of every directory form a contiguous range sorted by name.
+ * Names are only stored as single segments in one shared byte array.
+ * Sizes and times are stored as int deltas, as the few values that don't fit are kept separately.
+ */
+final class ModuleIndex {
+
+    static final byte FILE = 0;
+    static final byte DIRECTORY = 1;
+    static final byte OTHER = 2;
+
+    private static final int TYPE_MASK = 3;
+    private static final byte HAS_CRC = 4;
+
+    static final int ROOT = 0;
+
+    static final class Builder {
+
+        private static final class Node {
+
+            private final byte[] name;
+            private byte type = DIRECTORY;
+            private long size;
+            private long time;
+            private long crc = -1;
+            private int offset = -1;
+            private Map<String, Node> children;
+
+            private Node(byte[] name) {
+                this.name = name;
+            }
+
+            private Node child(String name) {
+                if (children == null) {
+                    children = new HashMap<>();
+                }
+                return children.computeIfAbsent(name, n -> new Node(n.getBytes(StandardCharsets.UTF_8)));
+            }
+        }
+
+        private final Node root = new Node(new byte[0]);
+
+        void add(List<String> segments, byte type, long size, long time, long crc) {
+            add(segments, type, size, time, crc, -1);
+        }
+
+        void add(List<String> segments, byte type, long size, long time, long crc, int offset) {
+            var node = root;
+            for (var s : segments) {
+                node = node.child(s);
+            }
+            node.type = type;
+            node.size = size;
+            node.time = time;
+            node.crc = crc;
+            node.offset = offset;
+            if (type != DIRECTORY) {
+                node.children = null;
+            }
+        }
+
+        void remove(List<String> segments) {
+            if (segments.isEmpty()) {
+                return;
+            }
+
+            var node = root;
+            for (var s : segments.subList(0, segments.size() - 1)) {
+                node = node.children != null ? node.children.get(s) : null;
+                if (node == null) {
+                    return;
+                }
+            }
+            if (node.children != null) {
+                node.children.remove(segments.get(segments.size() - 1));
+            }
+        }
+
+        /**
+         * Adds a file or a directory with all of its entries.
+         */
+        void scan(Path basePath, Path start, boolean computeCrcs) throws IOException {
+            var stored = basePath.resolve(ModuleIndexWriter.LOCATION);
+            Files.walkFileTree(start, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    add(basePath, dir, attrs, computeCrcs);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    // The stored index can't contain itself
+                    if (!file.equals(stored)) {
+                        add(basePath, file, attrs, computeCrcs);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+
+        /**
+         * Adds a single entry.
+         * CRCs are taken from zip file systems, other file systems only compute them if requested as this requires reading all files.
+         */
+        void add(Path basePath, Path p, BasicFileAttributes attrs, boolean computeCrcs) throws IOException {
+            var type = attrs.isDirectory() ? DIRECTORY : attrs.isRegularFile() ? FILE : OTHER;
+            long crc = -1;
+            if (type == FILE && p.getFileSystem().supportedFileAttributeViews().contains("zip")) {
+                crc = (Long) Files.getAttribute(p, "zip:crc");
+            } else if (type == FILE && computeCrcs) {
+                crc = computeCrc(p);
+            }
+            add(segments(basePath, p), type, attrs.size(), attrs.lastModifiedTime().toMillis(), crc);
+        }
+
+        static List<String> segments(Path basePath, Path p) {
+            var segments = new ArrayList<String>();
+            for (var name : basePath.relativize(p)) {
+                if (!name.toString().isEmpty()) {
+                    segments.add(name.toString());
+                }
+            }
+            return segments;
+        }
+
+        ModuleIndex build() {
+            var nodes = new ArrayList<Node>();
+            nodes.add(root);
+            for (int i = 0; i < nodes.size(); i++) {
+                var n = nodes.get(i);
+                if (n.children != null) {
+                    var sorted = new ArrayList<>(n.children.values());
+                    sorted.sort((a, b) -> Arrays.compareUnsigned(a.name, b.name));
+                    nodes.addAll(sorted);
+                }
+            }
+
+            int total = nodes.size();
+            int totalNameBytes = 0;
+            for (var n : nodes) {
+                totalNameBytes += n.name.length;
+            }
+
+            var names = new byte[totalNameBytes];
+            var nameOffsets = new int[total + 1];
+            var sizes = new long[total];
+            var times = new long[total];
+            var crcs = new int[total];
+            var offsets = new int[total];
+            var types = new byte[total];
+            var firstChild = new int[total + 1];
+
+            int offset = 0;
+            int next = 1;
+            for (int i = 0; i < total; i++) {
+                var n = nodes.get(i);
+                nameOffsets[i] = offset;
+                System.arraycopy(n.name, 0, names, offset, n.name.length);
+                offset += n.name.length;
+                sizes[i] = n.size;
+                times[i] = n.time;
+                crcs[i] = (int) n.crc;
+                offsets[i] = n.offset;
+                types[i] = n.crc != -1 ? (byte) (n.type | HAS_CRC) : n.type;
+                firstChild[i] = next;
+                next += n.children != null ? n.children.size() : 0;
+            }
+            nameOffsets[total] = offset;
+            firstChild[total] = next;
+            return new ModuleIndex(names, nameOffsets, PackedLongs.of(sizes, 0), PackedLongs.of(times, median(times)), crcs, offsets, types, firstChild);
+        }
+
+        private static long median(long[] values) {
+            var sorted = values.clone();
+            Arrays.sort(sorted);
+            return sorted[sorted.length / 2];
+        }
+    }
+
+    /**
+     * Stores longs as int deltas to a base value. The rare values that don't fit are kept in a separate sorted table.
+     */
+    private static final class PackedLongs {
+
+        private static final int OUTLIER = Integer.MIN_VALUE;
+
+        static PackedLongs of(long[] values, long base) {
+            var deltas = new int[values.length];
+            int outliers = 0;
+            for (int i = 0; i < values.length; i++) {
+                long delta = values[i] - base;
+                if (delta > Integer.MIN_VALUE && delta <= Integer.MAX_VALUE) {
+                    deltas[i] = (int) delta;
+                } else {
+                    deltas[i] = OUTLIER;
+                    outliers++;
+                }
+            }
+
+            var outlierEntries = new int[outliers];
+            var outlierValues = new long[outliers];
+            for (int i = 0, o = 0; o < outliers; i++) {
+                if (deltas[i] == OUTLIER) {
+                    outlierEntries[o] = i;
+                    outlierValues[o++] = values[i];
+                }
+            }
+            return new PackedLongs(base, deltas, outlierEntries, outlierValues);
+        }
+
+        private final long base;
+        private final int[] deltas;
+        private final int[] outlierEntries;
+        private final long[] outlierValues;
+
+        private PackedLongs(long base, int[] deltas, int[] outlierEntries, long[] outlierValues) {
+            this.base = base;
+            this.deltas = deltas;
+            this.outlierEntries = outlierEntries;
+            this.outlierValues = outlierValues;
+        }
+
+        long get(int entry) {
+            int delta = deltas[entry];
+            return delta != OUTLIER ? base + delta : outlierValues[Arrays.binarySearch(outlierEntries, entry)];
+        }
+    }
+
+    static ModuleIndex of(Path basePath) throws IOException {
+        return of(basePath, false);
+    }
+
+    /**
+     * Walks all entries below the base path.
+     */
+    static ModuleIndex of(Path basePath, boolean computeCrcs) throws IOException {
+        var builder = new Builder();
+        builder.scan(basePath, basePath, computeCrcs);
+        return builder.build();
+    }
+
+    private static long computeCrc(Path file) throws IOException {
+        var crc = new CRC32();
+        try (var in = Files.newInputStream(file)) {
+            var buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Reads an index and checks that its structure is consistent, so that a damaged index can't cause lookups to fail or loop.
+     */
+    static ModuleIndex read(ByteBuffer buffer) throws IOException {
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("Unsupported module index format");
+            }
+
+            // Every entry takes at least five bytes, which bounds the allocations before anything is read
+            int total = readVarInt(buffer);
+            int totalNameBytes = readVarInt(buffer);
+            if (total < 1 || total > buffer.remaining() / 5 || totalNameBytes > buffer.remaining()) {
+                throw corrupt();
+            }
+
+            var names = new byte[totalNameBytes];
+            buffer.get(names);
+            var nameOffsets = new int[total + 1];
+            var sizes = new long[total];
+            var times = new long[total];
+            var crcs = new int[total];
+            var offsets = new int[total];
+            var types = new byte[total];
+            var firstChild = new int[total + 1];
+
+            int nameOffset = 0;
+            int next = 1;
+            long time = 0;
+            for (int i = 0; i < total; i++) {
+                nameOffsets[i] = nameOffset;
+                int nameLength = readVarInt(buffer);
+                if (nameLength > totalNameBytes - nameOffset) {
+                    throw corrupt();
+                }
+                nameOffset += nameLength;
+
+                types[i] = buffer.get();
+                int type = types[i] & TYPE_MASK;
+                if ((types[i] & ~(TYPE_MASK | HAS_CRC)) != 0 || type > OTHER || (i == ROOT && type != DIRECTORY)) {
+                    throw corrupt();
+                }
+
+                // Children always come after their parent and take up the next unused range
+                int childCount = readVarInt(buffer);
+                if (childCount > 0 && (type != DIRECTORY || next <= i || childCount > total - next)) {
+                    throw corrupt();
+                }
+                firstChild[i] = next;
+                next += childCount;
+
+                sizes[i] = readVarLong(buffer);
+                time += decodeZigZag(readVarLong(buffer));
+                times[i] = time;
+                if ((types[i] & HAS_CRC) != 0) {
+                    crcs[i] = buffer.getInt();
+                }
+                offsets[i] = readVarInt(buffer) - 1;
+            }
+            if (nameOffset != totalNameBytes || next != total) {
+                throw corrupt();
+            }
+            nameOffsets[total] = nameOffset;
+            firstChild[total] = next;
+            return new ModuleIndex(names, nameOffsets, PackedLongs.of(sizes, 0), PackedLongs.of(times, Builder.median(times)), crcs, offsets, types, firstChild);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Module index is truncated", e);
+        }
+    }
+
+    private static IOException corrupt() {
+        return new IOException("Module index is corrupt");
+    }
+
+    private static long readVarLong(ByteBuffer buffer) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw corrupt();
+    }
+
+    private static int readVarInt(ByteBuffer buffer) throws IOException {
+        long value = readVarLong(buffer);
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw corrupt();
+        }
+        return (int) value;
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long decodeZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long encodeZigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * Writes the index as variable length integers. Entries are written one after another and times as the difference to the previous one,
+     * as entries that are listed together usually also have been modified together.
+     */
+    void write(OutputStream out) throws IOException {
+        var data = new DataOutputStream(new BufferedOutputStream(out));
+        int total = size();
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        writeVarLong(data, total);
+        writeVarLong(data, names.length);
+        data.write(names);
+        long time = 0;
+        for (int i = 0; i < total; i++) {
+            writeVarLong(data, nameOffsets[i + 1] - nameOffsets[i]);
+            data.writeByte(types[i]);
+            writeVarLong(data, getChildCount(i));
+            writeVarLong(data, getSize(i));
+            writeVarLong(data, encodeZigZag(times.get(i) - time));
+            time = times.get(i);
+            if ((types[i] & HAS_CRC) != 0) {
+                data.writeInt(crcs[i]);
+            }
+            writeVarLong(data, offsets[i] + 1L);
+        }
+        data.flush();
+    }
+
+    private static final int MAGIC = 0x4D465349;
+    private static final int VERSION = 3;
+
+    private final byte[] names;
+    private final int[] nameOffsets;
+    private final PackedLongs sizes;
+    private final PackedLongs times;
+    private final int[] crcs;
+    private final int[] offsets;
+    private final byte[] types;
+    private final int[] firstChild;
+
+    private ModuleIndex(
+            byte[] names, int[] nameOffsets, PackedLongs sizes, PackedLongs times, int[] crcs, int[] offsets, byte[] types, int[] firstChild) {
+        this.names = names;
+        this.nameOffsets = nameOffsets;
+        this.sizes = sizes;
+        this.times = times;
+        this.crcs = crcs;
+        this.offsets = offsets;
+        this.types = types;
+        this.firstChild = firstChild;
+    }
+
+    int size() {
+        return types.length;
+    }
+
+    /**
+     * Returns an index in which files take the attributes of other entries, keyed by their relative names.
+     */
+    ModuleIndex overlay(Map<String, String> sources) {
+        if (sources.isEmpty()) {
+            return this;
+        }
+
+        var builder = toBuilder();
+        for (var e : sources.entrySet()) {
+            int entry = find(Arrays.asList(e.getValue().split("/")));
+            if (entry != -1) {
+                builder.add(Arrays.asList(e.getKey().split("/")), getType(entry), getSize(entry), times.get(entry), getCrc(entry), offsets[entry]);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns a builder that contains all entries of this index, so that it can be updated without walking the module again.
+     */
+    Builder toBuilder() {
+        var builder = new Builder();
+        var nodes = new ArrayDeque<Builder.Node>();
+        var entries = new ArrayDeque<Integer>();
+        nodes.add(builder.root);
+        entries.add(ROOT);
+        while (!nodes.isEmpty()) {
+            var node = nodes.poll();
+            int entry = entries.poll();
+            node.type = getType(entry);
+            node.size = getSize(entry);
+            node.time = times.get(entry);
+            node.crc = getCrc(entry);
+            node.offset = offsets[entry];
+            for (int c = firstChild[entry]; c < firstChild[entry + 1]; c++) {
+                nodes.add(node.child(getName(c)));
+                entries.add(c);
+            }
+        }
+        return builder;
+    }
+
+    int find(ModulePath path) {
+        int current = ROOT;
+        for (int i = 0; i < path.getSegmentCount(); i++) {
+            current = findChild(current, path.getSegment(i).getBytes(StandardCharsets.UTF_8));
+            if (current == -1) {
+                return -1;
+            }
+        }
+        return current;
+    }
+
+    int find(List<String> segments) {
+        int current = ROOT;
+        for (var segment : segments) {
+            current = findChild(current, segment.getBytes(StandardCharsets.UTF_8));
+            if (current == -1) {
+                return -1;
+            }
+        }
+        return current;
+    }
+
+    private int findChild(int dir, byte[] name) {
+        int low = firstChild[dir];
+        int high = firstChild[dir + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = Arrays.compareUnsigned(names, nameOffsets[mid], nameOffsets[mid + 1], name, 0, name.length);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    String getName(int entry) {
+        return new String(names, nameOffsets[entry], nameOffsets[entry + 1] - nameOffsets[entry], StandardCharsets.UTF_8);
+    }
+
+    private byte getType(int entry) {
+        return (byte) (types[entry] & TYPE_MASK);
+    }
+
+    boolean isDirectory(int entry) {
+        return getType(entry) == DIRECTORY;
+    }
+
+    long getSize(int entry) {
+        return sizes.get(entry);
+    }
+
+    /**
+     * Returns the CRC-32 of a file or -1 if it is not known.
+     */
+    long getCrc(int entry) {
+        return (types[entry] & HAS_CRC) != 0 ? Integer.toUnsignedLong(crcs[entry]) : -1;
+    }
+
+    /**
+     * Returns the offset of the local header of a file in its jar or -1 if it is not known.
+     */
+    int getOffset(int entry) {
+        return offsets[entry];
+    }
+
+    int getFirstChild(int entry) {
+        return firstChild[entry];
+    }
+
+    int getChildCount(int entry) {
+        return firstChild[entry + 1] - firstChild[entry];
+    }
+
+    BasicFileAttributes getAttributes(int entry) {
+        return new Attributes(entry);
+    }
+
+    private final class Attributes implements BasicFileAttributes {
+
+        private final int entry;
+
+        private Attributes(int entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public FileTime lastModifiedTime() {
+            return FileTime.fromMillis(times.get(entry));
+        }
+
+        @Override
+        public FileTime lastAccessTime() {
+            return lastModifiedTime();
+        }
+
+        @Override
+        public FileTime creationTime() {
+            return lastModifiedTime();
+        }
+
+        @Override
+        public boolean isRegularFile() {
+            return getType(entry) == FILE;
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return getType(entry) == DIRECTORY;
+        }
+
+        @Override
+        public boolean isSymbolicLink() {
+            return false;
+        }
+
+        @Override
+        public boolean isOther() {
+            return getType(entry) == OTHER;
+        }
+
+        @Override
+        public long size() {
+            return getSize(entry);
+        }
+
+        @Override
+        public Object fileKey() {
+            return null;
+        }
+    }
+}
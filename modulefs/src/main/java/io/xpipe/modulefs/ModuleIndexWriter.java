@@ -0,0 +1,82 @@
+package io.xpipe.modulefs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+/**
+ * Writes a precomputed index into a module artifact at build time.
+ * Module file systems opened on an artifact that contains an index use it for all lookups and listings,
+ * so neither the central directory of a jar has to be scanned nor the directories of an exploded module have to be read.
+ * The index of a jar also contains the local header offsets of all files, so they can be read without parsing the central directory.
+ * It is appended to the jar without moving any other entry.
+ * The index has to be written again whenever the contents of the module change.
+ */
+public final class ModuleIndexWriter {
+
+    /**
+     * The location of the index relative to the module root.
+     */
+    public static final String LOCATION = "META-INF/modulefs.idx";
+
+    private ModuleIndexWriter() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: ModuleIndexWriter <module jar or directory>...");
+            System.exit(1);
+        }
+
+        for (var arg : args) {
+            write(Path.of(arg));
+        }
+    }
+
+    /**
+     * Writes the index into a module jar or exploded module directory, replacing an existing index.
+     */
+    public static void write(Path module) throws IOException {
+        if (Files.isDirectory(module)) {
+            write(module, module);
+            return;
+        }
+
+        // An outdated index must neither be indexed nor kept next to the new one
+        try (var fs = FileSystems.newFileSystem(module, Map.of())) {
+            Files.deleteIfExists(fs.getPath(LOCATION));
+        }
+
+        var archive = new JarArchive(module.toString(), ByteBuffer.wrap(Files.readAllBytes(module)));
+        var data = new ByteArrayOutputStream();
+        archive.createIndex().write(data);
+        var temp = Files.createTempFile(module.toAbsolutePath().getParent(), module.getFileName().toString(), ".tmp");
+        try {
+            try (var out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                archive.write(out, LOCATION, data.toByteArray());
+            }
+            Files.move(temp, module, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw new IOException("Unable to write index of module " + module, e);
+        }
+    }
+
+    private static void write(Path root, Path module) throws IOException {
+        var index = ModuleIndex.of(root, true);
+        var target = root.resolve(LOCATION);
+        Files.createDirectories(target.getParent());
+        try (var out = Files.newOutputStream(target)) {
+            index.write(out);
+        } catch (IOException e) {
+            throw new IOException("Unable to write index of module " + module, e);
+        }
+    }
+}
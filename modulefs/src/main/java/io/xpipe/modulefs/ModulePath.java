@@ -3,26 +3,132 @@ package io.xpipe.modulefs;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 
-public class ModulePath implements Path {
+/**
+ * A path inside a module file system.
+ * Paths are stored as views on arrays of name segments, which are interned per file system.
+ * Absolute paths start at the module root, independent of the location of the module.
+ * Paths listed from an index carry the attributes of the index entry,
+ * so that the traversals of {@link ModuleFiles} don't have to look up every entry again.
+ */
+public final class ModulePath implements Path {
+
+    private static final String[] EMPTY = new String[0];
 
     private final ModuleFileSystem fs;
-    private final Path wrappedPath;
+    private final String[] segments;
+    private final int offset;
+    private final int count;
+    private final boolean absolute;
+    private final int hash;
+    private final BasicFileAttributes attributes;
+    private volatile Path wrappedPath;
+    private volatile URI uri;
+
+    ModulePath(ModuleFileSystem fs, String[] segments, int offset, int count, boolean absolute) {
+        this(fs, segments, offset, count, absolute, null);
+    }
 
-    ModulePath(ModuleFileSystem fs, Path wrappedPath) {
+    private ModulePath(ModuleFileSystem fs, String[] segments, int offset, int count, boolean absolute, BasicFileAttributes attributes) {
         this.fs = fs;
-        this.wrappedPath = wrappedPath;
+        this.segments = segments;
+        this.offset = offset;
+        this.count = count;
+        this.absolute = absolute;
+        this.attributes = attributes;
+
+        int h = absolute ? 1 : 0;
+        for (int i = offset; i < offset + count; i++) {
+            h = 31 * h + segments[i].hashCode();
+        }
+        this.hash = h;
+    }
+
+    ModulePath(ModuleFileSystem fs, String[] segments, boolean absolute) {
+        this(fs, segments, 0, segments.length, absolute);
+    }
+
+    static ModulePath root(ModuleFileSystem fs) {
+        return new ModulePath(fs, EMPTY, true);
     }
 
     ModuleFileSystem getModuleFileSystem() {
         return fs;
     }
 
+    int getSegmentCount() {
+        return count;
+    }
+
+    String getSegment(int index) {
+        return segments[offset + index];
+    }
+
+    /**
+     * Returns the path of a direct child without having to parse the name.
+     */
+    ModulePath resolveName(String name) {
+        return resolveName(name, null);
+    }
+
+    ModulePath resolveName(String name, BasicFileAttributes attributes) {
+        var joined = Arrays.copyOfRange(segments, offset, offset + count + 1);
+        joined[count] = fs.intern(name);
+        return new ModulePath(fs, joined, 0, joined.length, absolute, attributes);
+    }
+
+    /**
+     * Returns the attributes that the parent directory listing provided, or null if there are none.
+     * They are a snapshot of the listing, so they are only used by traversals right after listing a directory.
+     * They were read without following links, so the attributes of links are only valid if links are not followed.
+     */
+    BasicFileAttributes getListedAttributes(LinkOption... options) {
+        var a = attributes;
+        if (a == null || (a.isSymbolicLink() && Arrays.stream(options).noneMatch(o -> o == LinkOption.NOFOLLOW_LINKS))) {
+            return null;
+        }
+        return a;
+    }
+
+    String toRelativeString() {
+        if (count == 0) {
+            return "";
+        }
+        if (count == 1) {
+            return segments[offset];
+        }
+
+        var sb = new StringBuilder();
+        for (int i = offset; i < offset + count; i++) {
+            if (i != offset) {
+                sb.append('/');
+            }
+            sb.append(segments[i]);
+        }
+        return sb.toString();
+    }
+
     public Path getWrappedPath() {
-        return wrappedPath;
+        var wp = wrappedPath;
+        if (wp == null) {
+            wp = fs.toWrappedPath(this);
+            wrappedPath = wp;
+        }
+        return wp;
+    }
+
+    /**
+     * Returns the wrapped path that operations on this path actually target.
+     */
+    Path getTargetPath() {
+        return fs.resolveEntry(this).getWrappedPath();
     }
 
     @Override
@@ -32,147 +138,236 @@ public class ModulePath implements Path {
 
     @Override
     public boolean isAbsolute() {
-        return wrappedPath.isAbsolute();
+        return absolute;
     }
 
     @Override
     public Path getRoot() {
-        return fs.getRoot();
+        return absolute ? fs.getRoot() : null;
     }
 
     @Override
     public Path getFileName() {
-        return wrappedPath.getFileName();
+        if (count == 0) {
+            return null;
+        }
+        if (count == 1 && !absolute) {
+            return this;
+        }
+        return new ModulePath(fs, segments, offset + count - 1, 1, false);
     }
 
     @Override
     public Path getParent() {
-        return new ModulePath(fs, wrappedPath.getParent());
+        if (count == 0 || (count == 1 && !absolute)) {
+            return null;
+        }
+        return new ModulePath(fs, segments, offset, count - 1, absolute);
     }
 
     @Override
     public int getNameCount() {
-        return wrappedPath.getNameCount();
+        return count;
     }
 
     @Override
     public Path getName(int index) {
-        return new ModulePath(fs, wrappedPath.getName(index));
+        if (index < 0 || index >= count) {
+            throw new IllegalArgumentException("Invalid name index " + index);
+        }
+        return new ModulePath(fs, segments, offset + index, 1, false);
     }
 
     @Override
     public Path subpath(int beginIndex, int endIndex) {
-        return new ModulePath(fs, wrappedPath.subpath(beginIndex, endIndex));
+        if (beginIndex < 0 || endIndex > count || beginIndex >= endIndex) {
+            throw new IllegalArgumentException("Invalid subpath range " + beginIndex + " - " + endIndex);
+        }
+        return new ModulePath(fs, segments, offset + beginIndex, endIndex - beginIndex, false);
     }
 
-    private Path getNullableWrappedPathInternal(Path other) {
+    private ModulePath getNullableModulePathInternal(Path other) {
         Objects.requireNonNull(other, "other");
         if (!(other instanceof ModulePath)) {
             return null;
         }
         var cast = (ModulePath) other;
-        if (!cast.fs.equals(fs)) {
+        if (cast.fs != fs) {
             return null;
         }
-
-        return cast.wrappedPath;
+        return cast;
     }
 
-    private Path getNonNullWrappedPathInternal(Path other) {
+    private ModulePath getNonNullModulePathInternal(Path other) {
         Objects.requireNonNull(other, "other");
         if (!(other instanceof ModulePath)) {
             throw new ProviderMismatchException();
         }
-        var cast = (ModulePath) other;
-        return cast.wrappedPath;
+        return (ModulePath) other;
+    }
+
+    private boolean segmentsEqual(int index, ModulePath other, int otherIndex, int length) {
+        for (int i = 0; i < length; i++) {
+            var a = segments[offset + index + i];
+            var b = other.segments[other.offset + otherIndex + i];
+            // Segments are interned, so the equality check is only needed for paths of different file systems
+            if (a != b && !a.equals(b)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     @Override
     public String toString() {
-        return wrappedPath.toString();
+        return absolute ? "/" + toRelativeString() : toRelativeString();
     }
 
     @Override
     public boolean startsWith(Path other) {
-        var wp = getNullableWrappedPathInternal(other);
-        return wp != null && wrappedPath.startsWith(wp);
+        var mp = getNullableModulePathInternal(other);
+        return mp != null && mp.absolute == absolute && mp.count <= count && segmentsEqual(0, mp, 0, mp.count);
     }
 
     @Override
     public boolean startsWith(String other) {
-        return startsWith(fs.getPath(other));
+        return startsWith(fs.parsePath(other));
     }
 
     @Override
     public boolean endsWith(Path other) {
-        var wp = getNullableWrappedPathInternal(other);
-        return wp != null && wrappedPath.endsWith(wp);
+        var mp = getNullableModulePathInternal(other);
+        if (mp == null || mp.count > count || (mp.absolute && (!absolute || mp.count != count))) {
+            return false;
+        }
+        return segmentsEqual(count - mp.count, mp, 0, mp.count);
     }
 
     @Override
     public boolean endsWith(String other) {
-        return endsWith(fs.getPath(other));
+        return endsWith(fs.parsePath(other));
     }
 
     @Override
     public Path normalize() {
-        return new ModulePath(fs, wrappedPath.normalize());
+        boolean normal = true;
+        for (int i = offset; i < offset + count; i++) {
+            if (segments[i].equals(".") || segments[i].equals("..")) {
+                normal = false;
+                break;
+            }
+        }
+        if (normal) {
+            return this;
+        }
+
+        var result = new String[count];
+        int size = 0;
+        for (int i = offset; i < offset + count; i++) {
+            var s = segments[i];
+            if (s.equals(".")) {
+                continue;
+            }
+            if (s.equals("..")) {
+                if (size > 0 && !result[size - 1].equals("..")) {
+                    size--;
+                    continue;
+                }
+                // Parents of the root are the root itself
+                if (absolute) {
+                    continue;
+                }
+            }
+            result[size++] = s;
+        }
+        return new ModulePath(fs, result, 0, size, absolute);
     }
 
     @Override
     public Path resolve(Path other) {
-        var wp = getNonNullWrappedPathInternal(other);
-        if (wp.isAbsolute()) {
+        var mp = getNonNullModulePathInternal(other);
+        if (mp.absolute) {
             return other;
         }
+        if (mp.count == 0) {
+            return this;
+        }
 
-        return new ModulePath(fs, wrappedPath.resolve(wp));
+        var joined = new String[count + mp.count];
+        System.arraycopy(segments, offset, joined, 0, count);
+        for (int i = 0; i < mp.count; i++) {
+            joined[count + i] = fs.intern(mp.segments[mp.offset + i]);
+        }
+        return new ModulePath(fs, joined, absolute);
     }
 
     @Override
     public Path resolve(String other) {
-        return new ModulePath(fs, wrappedPath.resolve(other));
+        return resolve(fs.parsePath(other));
     }
 
     @Override
     public Path resolveSibling(Path other) {
-        var wp = getNonNullWrappedPathInternal(other);
-        if (wp.isAbsolute()) {
-            return other;
-        }
-
-        return new ModulePath(fs, wrappedPath.resolveSibling(wp));
+        var parent = getParent();
+        return parent == null ? getNonNullModulePathInternal(other) : parent.resolve(other);
     }
 
     @Override
     public Path resolveSibling(String other) {
-        return new ModulePath(fs, wrappedPath.resolveSibling(other));
+        return resolveSibling(fs.parsePath(other));
     }
 
     @Override
     public Path relativize(Path other) {
-        var wp = getNonNullWrappedPathInternal(other);
-        return new ModulePath(fs, wrappedPath.relativize(wp));
+        var mp = getNonNullModulePathInternal(other);
+        if (mp.absolute != absolute) {
+            throw new IllegalArgumentException("Only paths of the same type can be relativized");
+        }
+
+        int common = 0;
+        while (common < count && common < mp.count && segmentsEqual(common, mp, common, 1)) {
+            common++;
+        }
+
+        var result = new String[count - common + mp.count - common];
+        int size = 0;
+        for (int i = common; i < count; i++) {
+            result[size++] = fs.intern("..");
+        }
+        for (int i = common; i < mp.count; i++) {
+            result[size++] = fs.intern(mp.segments[mp.offset + i]);
+        }
+        return new ModulePath(fs, result, false);
     }
 
     @Override
     public URI toUri() {
-        return URI.create("module:/" + fs.getModule() + "!/" + fs.basePath.relativize(wrappedPath).toString());
+        var u = uri;
+        if (u == null) {
+            var abs = (ModulePath) toAbsolutePath();
+            try {
+                u = new URI("module", null, "/" + fs.getModule() + "!/" + abs.toRelativeString(), null);
+            } catch (URISyntaxException e) {
+                throw new IllegalStateException(e);
+            }
+            uri = u;
+        }
+        return u;
     }
 
     @Override
     public Path toAbsolutePath() {
-        return new ModulePath(fs, wrappedPath.toAbsolutePath());
+        return absolute ? this : new ModulePath(fs, segments, offset, count, true);
     }
 
     @Override
     public Path toRealPath(LinkOption... options) throws IOException {
-        return new ModulePath(fs, wrappedPath.toRealPath(options));
+        return fs.toRealPath(this, options);
     }
 
     @Override
     public File toFile() {
-        return wrappedPath.toFile();
+        return getWrappedPath().toFile();
     }
 
     @Override
@@ -180,36 +375,67 @@ public class ModulePath implements Path {
             WatchService watcher,
             WatchEvent.Kind<?>[] events,
             WatchEvent.Modifier... modifiers) throws IOException {
-        return wrappedPath.register(watcher, events, modifiers);
+        return getWrappedPath().register(watcher, events, modifiers);
     }
 
     @Override
     public WatchKey register(WatchService watcher, WatchEvent.Kind<?>... events) throws IOException {
-        return wrappedPath.register(watcher, events);
+        return getWrappedPath().register(watcher, events);
     }
 
     @Override
     public Iterator<Path> iterator() {
         return new Iterator<>() {
-            private final Iterator<Path> wrappedIterator = wrappedPath.iterator();
+
+            private int index;
 
             @Override
             public boolean hasNext() {
-                return wrappedIterator.hasNext();
+                return index < count;
             }
 
             @Override
             public Path next() {
-                return new ModulePath(fs, wrappedIterator.next());
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return getName(index++);
             }
         };
     }
 
     @Override
     public int compareTo(Path other) {
-        var wp = getNonNullWrappedPathInternal(other);
-        return wrappedPath.compareTo(wp);
+        var mp = getNonNullModulePathInternal(other);
+        if (absolute != mp.absolute) {
+            return absolute ? -1 : 1;
+        }
+
+        int length = Math.min(count, mp.count);
+        for (int i = 0; i < length; i++) {
+            int c = segments[offset + i].compareTo(mp.segments[mp.offset + i]);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return Integer.compare(count, mp.count);
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ModulePath)) {
+            return false;
+        }
+        var mp = (ModulePath) o;
+        return fs == mp.fs && hash == mp.hash && absolute == mp.absolute && count == mp.count
+                && segmentsEqual(0, mp, 0, count);
+    }
 
+    @Override
+    public int hashCode() {
+        return hash;
+    }
 }
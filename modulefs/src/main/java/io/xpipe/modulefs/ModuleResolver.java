@@ -0,0 +1,47 @@
+package io.xpipe.modulefs;
+
+import java.lang.module.ModuleReference;
+import java.lang.module.ResolvedModule;
+import java.net.URI;
+import java.util.*;
+
+final class ModuleResolver {
+
+    private final Map<ModuleLayer, Map<String, ResolvedModule>> indices =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    Optional<ResolvedModule> resolve(String name, ModuleLayer layer) {
+        return Optional.ofNullable(getIndex(layer).get(name));
+    }
+
+    /**
+     * Returns all modules that can be resolved from a layer.
+     */
+    Collection<ResolvedModule> list(ModuleLayer layer) {
+        return getIndex(layer).values();
+    }
+
+    Optional<URI> locate(ModuleReference reference) {
+        // References store their location, so looking it up in a map would only be slower
+        return reference.location();
+    }
+
+    private Map<String, ResolvedModule> getIndex(ModuleLayer layer) {
+        var index = indices.get(layer);
+        if (index != null) {
+            return index;
+        }
+
+        // Modules of a layer shadow the ones of its parents, which are searched depth first
+        var built = new HashMap<String, ResolvedModule>();
+        for (var m : layer.configuration().modules()) {
+            built.put(m.name(), m);
+        }
+        for (var p : layer.parents()) {
+            getIndex(p).forEach(built::putIfAbsent);
+        }
+
+        var existing = indices.putIfAbsent(layer, built);
+        return existing != null ? existing : built;
+    }
+}
@@ -0,0 +1,103 @@
+package io.xpipe.modulefs;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Traverses a file tree breadth first. Directories are only listed once they are reached,
+ * so splitting hands off whole unexplored subtrees to other threads.
+ */
+final class ModuleTreeSpliterator implements Spliterator<Path> {
+
+    private static final class Item {
+
+        private final Path path;
+        private final boolean directory;
+        private boolean expanded;
+
+        private Item(Path path, boolean directory) {
+            this.path = path;
+            this.directory = directory;
+        }
+    }
+
+    private final ArrayDeque<Item> pending;
+
+    ModuleTreeSpliterator(ModulePath start) throws IOException {
+        this.pending = new ArrayDeque<>();
+        var attrs = Files.readAttributes(start, BasicFileAttributes.class);
+        pending.add(new Item(start, attrs.isDirectory()));
+    }
+
+    private ModuleTreeSpliterator(ArrayDeque<Item> pending) {
+        this.pending = pending;
+    }
+
+    private void expand(Item item) {
+        if (!item.directory || item.expanded) {
+            return;
+        }
+
+        item.expanded = true;
+        try (var ds = Files.newDirectoryStream(item.path)) {
+            for (var child : ds) {
+                // Links are not followed, so that a link to a parent directory can't create a cycle
+                var attrs = ModuleFiles.readListedAttributes(child, LinkOption.NOFOLLOW_LINKS);
+                pending.add(new Item(child, attrs.isDirectory()));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Path> action) {
+        var item = pending.pollFirst();
+        if (item == null) {
+            return false;
+        }
+
+        expand(item);
+        action.accept(item.path);
+        return true;
+    }
+
+    @Override
+    public Spliterator<Path> trySplit() {
+        // A single directory can be split once its children are known
+        if (pending.size() == 1) {
+            var item = pending.peekFirst();
+            if (item.directory && !item.expanded) {
+                expand(item);
+            }
+        }
+
+        int size = pending.size();
+        if (size < 2) {
+            return null;
+        }
+
+        var split = new ArrayDeque<Item>(size / 2);
+        for (int i = 0; i < size / 2; i++) {
+            split.add(pending.pollLast());
+        }
+        return new ModuleTreeSpliterator(split);
+    }
+
+    @Override
+    public long estimateSize() {
+        return pending.isEmpty() ? 0 : Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return DISTINCT | NONNULL | IMMUTABLE;
+    }
+}
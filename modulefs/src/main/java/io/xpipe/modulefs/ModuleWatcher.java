@@ -0,0 +1,147 @@
+package io.xpipe.modulefs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches all directories below a base path and passes on the changed paths in batches.
+ * A batch is only passed on once no further changes arrived for the debounce time, so that bulk updates are handled at once.
+ */
+final class ModuleWatcher implements Closeable {
+
+    interface Listener {
+
+        /**
+         * Called with the absolute paths of all changed files and directories.
+         * If events were lost, overflow is set and any file might have changed.
+         */
+        void onChanges(Set<Path> changed, boolean overflow);
+
+        /**
+         * Called if changes could not be applied, after which no further changes are passed on.
+         */
+        void onFailure(RuntimeException e);
+    }
+
+    private final WatchService service;
+    private final Map<WatchKey, Path> directories = new ConcurrentHashMap<>();
+    private final long debounceMillis;
+    private final Listener listener;
+    private final Thread thread;
+
+    ModuleWatcher(Path basePath, long debounceMillis, Listener listener) throws IOException {
+        this.service = basePath.getFileSystem().newWatchService();
+        this.debounceMillis = debounceMillis;
+        this.listener = listener;
+        try {
+            register(basePath, null);
+        } catch (IOException e) {
+            service.close();
+            throw e;
+        }
+        this.thread = new Thread(this::run, "modulefs-watch");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    private void register(Path start, Set<Path> created) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                directories.put(dir.register(service, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                // Files in a new directory might have been created before the directory was registered
+                if (created != null) {
+                    created.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                var key = service.take();
+                var changed = new HashSet<Path>();
+                var overflow = false;
+                while (key != null) {
+                    overflow |= poll(key, changed);
+                    key = service.poll(debounceMillis, TimeUnit.MILLISECONDS);
+                }
+                if (!dispatch(changed, overflow)) {
+                    service.close();
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException | IOException ignored) {
+        }
+    }
+
+    /**
+     * Passes on changes without letting a failing listener stop the thread, which would leave it with stale contents forever.
+     * If the listener could not apply the changes, it is told that any file might have changed.
+     */
+    private boolean dispatch(Set<Path> changed, boolean overflow) {
+        try {
+            listener.onChanges(changed, overflow);
+            return true;
+        } catch (RuntimeException e) {
+            if (!overflow) {
+                try {
+                    listener.onChanges(Set.of(), true);
+                    return true;
+                } catch (RuntimeException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            listener.onFailure(e);
+            return false;
+        }
+    }
+
+    private boolean poll(WatchKey key, Set<Path> changed) {
+        var dir = directories.get(key);
+        var overflow = false;
+        for (var event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW || dir == null) {
+                overflow = true;
+                continue;
+            }
+
+            var path = dir.resolve((Path) event.context());
+            changed.add(path);
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                try {
+                    register(path, changed);
+                } catch (IOException e) {
+                    overflow = true;
+                }
+            }
+        }
+
+        if (!key.reset()) {
+            directories.remove(key);
+        }
+        return overflow;
+    }
+
+    @Override
+    public void close() throws IOException {
+        thread.interrupt();
+        service.close();
+    }
+}
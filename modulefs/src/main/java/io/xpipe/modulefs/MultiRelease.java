@@ -0,0 +1,87 @@
+package io.xpipe.modulefs;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.Manifest;
+
+/**
+ * Resolves the versioned view of a multi-release jar once, so that every later lookup only has to check a single map.
+ */
+final class MultiRelease {
+
+    static final String MANIFEST = "META-INF/MANIFEST.MF";
+
+    private static final String VERSIONS = "META-INF/versions/";
+
+    private MultiRelease() {
+    }
+
+    /**
+     * Returns the release that is requested with the {@code releaseVersion} key, or -1 if the jar should be accessed as is.
+     */
+    static int getReleaseVersion(Map<String, ?> env) {
+        var value = env.get("releaseVersion");
+        if (value == null || Boolean.FALSE.equals(value) || "false".equals(value)) {
+            return -1;
+        }
+        if (Boolean.TRUE.equals(value) || "true".equals(value) || "runtime".equals(value)) {
+            return Runtime.version().feature();
+        }
+        if (value instanceof Runtime.Version) {
+            return ((Runtime.Version) value).feature();
+        }
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        }
+        if (value instanceof String) {
+            return Runtime.Version.parse((String) value).feature();
+        }
+        throw new IllegalArgumentException("Invalid release version " + value);
+    }
+
+    static boolean isMultiRelease(byte[] manifest) throws IOException {
+        var attributes = new Manifest(new ByteArrayInputStream(manifest)).getMainAttributes();
+        return "true".equalsIgnoreCase(attributes.getValue("Multi-Release"));
+    }
+
+    /**
+     * Maps the names of all files that are overridden for a release to the names of their versioned entries.
+     * Like {@link java.util.jar.JarFile}, only versions from 9 up to the release are considered and the highest one wins.
+     */
+    static Map<String, String> map(ModuleIndex index, int release) {
+        var versions = index.find(List.of("META-INF", "versions"));
+        if (versions == -1 || !index.isDirectory(versions)) {
+            return Map.of();
+        }
+
+        var releases = new TreeMap<Integer, Integer>();
+        for (int c = index.getFirstChild(versions); c < index.getFirstChild(versions) + index.getChildCount(versions); c++) {
+            try {
+                int version = Integer.parseInt(index.getName(c));
+                if (version >= 9 && version <= release && index.isDirectory(c)) {
+                    releases.put(version, c);
+                }
+            } catch (NumberFormatException ignored) {
+            }
+        }
+
+        var map = new HashMap<String, String>();
+        releases.forEach((version, dir) -> addFiles(index, dir, VERSIONS + version + "/", "", map));
+        return map;
+    }
+
+    private static void addFiles(ModuleIndex index, int dir, String prefix, String path, Map<String, String> map) {
+        for (int c = index.getFirstChild(dir); c < index.getFirstChild(dir) + index.getChildCount(dir); c++) {
+            var name = path + index.getName(c);
+            if (index.isDirectory(c)) {
+                addFiles(index, c, prefix, name + "/", map);
+            } else {
+                map.put(name, prefix + name);
+            }
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package io.xpipe.modulefs;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A module jar that is stored inside of another jar, located by a URI like {@code jar:file:/app.jar!/lib/module.jar}.
+ * Inner jars that are stored without compression are read in place from the mapping of the outer jar.
+ * Deflated inner jars are inflated once into a cache directory, which can be set with the system property {@value #CACHE_DIR_PROPERTY}.
+ * The cache directory defaults to a directory of the current user in the temporary directory.
+ */
+public final class NestedJarModuleFileSystem extends ArchiveModuleFileSystem {
+
+    static final String BACKEND = "nested";
+    static final String CACHE_DIR_PROPERTY = "io.xpipe.modulefs.nested.cacheDir";
+
+    static Optional<NestedJarModuleFileSystem> create(String module, ModuleFileSystemProvider provider, URI location) throws IOException {
+        if (!location.getScheme().equals("jar")) {
+            return Optional.empty();
+        }
+
+        var lease = archives.acquire(location, NestedJarModuleFileSystem::openArchive);
+        return Optional.of(new NestedJarModuleFileSystem(module, getOuterFile(location), lease, provider));
+    }
+
+    private static final LeaseRegistry<URI, JarArchive> archives = new LeaseRegistry<>(
+            location -> LeaseRegistry.fileStamp(getOuterFile(location)));
+
+    /**
+     * Splits a location into the URI of the outer jar and the names of the nested jars.
+     */
+    private static List<String> split(URI location) {
+        var parts = new ArrayList<>(Arrays.asList(location.getRawSchemeSpecificPart().split("!/")));
+        for (int i = 1; i < parts.size(); i++) {
+            parts.set(i, URI.create(parts.get(i)).getPath());
+        }
+        parts.removeIf(String::isEmpty);
+        return parts;
+    }
+
+    private static Path getOuterFile(URI location) {
+        return Path.of(URI.create(split(location).get(0)));
+    }
+
+    private static JarArchive openArchive(URI location) throws IOException {
+        var parts = split(location);
+        JarArchive archive;
+        // Nested archives keep the mapping of the outer jar reachable on their own
+        try (var outer = MappedJarModuleFileSystem.acquireMappedArchive(getOuterFile(location))) {
+            archive = outer.get();
+        }
+
+        for (var name : parts.subList(1, parts.size())) {
+            var parent = archive;
+            var entry = parent.getEntry(name).filter(e -> !e.isDirectory())
+                    .orElseThrow(() -> new NoSuchFileException(parent + "!/" + name));
+            archive = entry.isStored()
+                    ? new JarArchive(parent + "!/" + name, parent.getRawData(entry))
+                    : JarArchive.open(spill(parent, entry));
+        }
+        return archive;
+    }
+
+    static Path getCacheDir() {
+        var dir = System.getProperty(CACHE_DIR_PROPERTY);
+        return dir != null
+                ? Path.of(dir)
+                : Path.of(System.getProperty("java.io.tmpdir"), "modulefs-nested-" + System.getProperty("user.name"));
+    }
+
+    /**
+     * Creates the cache directory so that only its owner can access it.
+     * As inflated jars are read as code, an existing directory is not used if anyone else could have placed files in it.
+     */
+    private static Path createCacheDir() throws IOException {
+        var dir = getCacheDir();
+        var posix = dir.getFileSystem().supportedFileAttributeViews().contains("posix");
+        if (!Files.exists(dir, LinkOption.NOFOLLOW_LINKS)) {
+            if (dir.getParent() != null) {
+                Files.createDirectories(dir.getParent());
+            }
+            try {
+                if (posix) {
+                    Files.createDirectory(dir, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+                } else {
+                    Files.createDirectory(dir);
+                }
+            } catch (FileAlreadyExistsException ignored) {
+                // Created concurrently, which is checked below
+            }
+        }
+
+        if (posix) {
+            var attrs = Files.readAttributes(dir, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            var user = dir.getFileSystem().getUserPrincipalLookupService().lookupPrincipalByName(System.getProperty("user.name"));
+            var shared = attrs.permissions().stream().anyMatch(p -> !p.name().startsWith("OWNER_"));
+            if (!attrs.isDirectory() || !attrs.owner().equals(user) || shared) {
+                throw new AccessDeniedException(dir.toString(), null, "Cache directory must be owned and only be accessible by " + user.getName());
+            }
+        } else if (!Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS)) {
+            throw new NotDirectoryException(dir.toString());
+        }
+        return dir;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String digest(Path file) throws IOException {
+        var digest = newDigest();
+        var buffer = ByteBuffer.allocate(64 * 1024);
+        try (var in = FileChannel.open(file, StandardOpenOption.READ, LinkOption.NOFOLLOW_LINKS)) {
+            while (in.read(buffer) != -1) {
+                digest.update(buffer.flip());
+                buffer.clear();
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Inflates a nested jar into the cache directory unless it has already been inflated before.
+     * The file name is derived from the SHA-256 of the compressed entry, so a changed entry is inflated again.
+     * The SHA-256 of the inflated jar is stored next to it and checked before the file is reused.
+     */
+    private static Path spill(JarArchive archive, JarArchive.Entry entry) throws IOException {
+        var dir = createCacheDir();
+        var name = entry.getName().substring(entry.getName().lastIndexOf('/') + 1);
+        var key = newDigest();
+        key.update(archive.getRawData(entry));
+        var file = dir.resolve(HexFormat.of().formatHex(key.digest()) + "-" + name);
+        var digestFile = dir.resolve(file.getFileName() + ".sha256");
+        if (Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS) && Files.isRegularFile(digestFile, LinkOption.NOFOLLOW_LINKS)
+                && Files.readString(digestFile).equals(digest(file))) {
+            return file;
+        }
+
+        var temp = Files.createTempFile(dir, name, ".tmp");
+        var tempDigest = Files.createTempFile(dir, name, ".tmp");
+        try {
+            var digest = newDigest();
+            var buffer = ByteBuffer.allocate(64 * 1024);
+            try (var in = archive.newChannel(entry);
+                 var out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (in.read(buffer) != -1) {
+                    buffer.flip();
+                    digest.update(buffer.duplicate());
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                    buffer.clear();
+                }
+            }
+            Files.writeString(tempDigest, HexFormat.of().formatHex(digest.digest()));
+            // Concurrent spills of the same entry write identical files, so the last one can win
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tempDigest, digestFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            Files.deleteIfExists(tempDigest);
+            throw e;
+        }
+        return file;
+    }
+
+    private final LeaseRegistry<URI, JarArchive>.Lease lease;
+
+    NestedJarModuleFileSystem(
+            String module, Path outerFile, LeaseRegistry<URI, JarArchive>.Lease lease, ModuleFileSystemProvider provider) {
+        super(module, outerFile, provider);
+        this.lease = lease;
+        track(lease);
+    }
+
+    @Override
+    JarArchive getArchive() {
+        return lease.get();
+    }
+
+    @Override
+    String getBackendName() {
+        return BACKEND;
+    }
+
+    @Override
+    void closeBackend() throws IOException {
+        lease.close();
+    }
+}
@@ -0,0 +1,218 @@
+package io.xpipe.modulefs;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A size bounded cache of resource contents with W-TinyLFU eviction.
+ * New entries are admitted into a small LRU window. Entries leaving the window only replace
+ * entries of the segmented LRU main region if they have been accessed more frequently.
+ */
+final class ResourceCache<K> {
+
+    private enum Region {
+        WINDOW,
+        PROBATION,
+        PROTECTED
+    }
+
+    private static final class Node<K> {
+
+        private final K key;
+        private final byte[] data;
+        private final long stamp;
+        private Region region = Region.WINDOW;
+
+        private Node(K key, byte[] data, long stamp) {
+            this.key = key;
+            this.data = data;
+            this.stamp = stamp;
+        }
+    }
+
+    private final long maxWeight;
+    private final long maxEntryWeight;
+    private final long windowMax;
+    private final long protectedMax;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<K, Node<K>> nodes = new HashMap<>();
+    private final LinkedHashMap<K, Node<K>> window = new LinkedHashMap<>();
+    private final LinkedHashMap<K, Node<K>> probation = new LinkedHashMap<>();
+    private final LinkedHashMap<K, Node<K>> protectedRegion = new LinkedHashMap<>();
+    private final FrequencySketch sketch;
+    private long windowWeight;
+    private long probationWeight;
+    private long protectedWeight;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    ResourceCache(long maxWeight, long maxEntryWeight) {
+        this.maxWeight = maxWeight;
+        this.windowMax = Math.max(1, maxWeight / 100);
+        this.maxEntryWeight = Math.min(maxEntryWeight, maxWeight - windowMax);
+        this.protectedMax = (maxWeight - windowMax) * 4 / 5;
+        this.sketch = new FrequencySketch((int) Math.min(Integer.MAX_VALUE, maxWeight / 1024));
+    }
+
+    long getMaxEntryWeight() {
+        return maxEntryWeight;
+    }
+
+    /**
+     * Returns the cached contents if they have been stored with the same stamp.
+     */
+    byte[] get(K key, long stamp) {
+        lock.lock();
+        try {
+            sketch.increment(key.hashCode());
+            var node = nodes.get(key);
+            if (node == null) {
+                misses++;
+                return null;
+            }
+            if (node.stamp != stamp) {
+                remove(node);
+                misses++;
+                return null;
+            }
+
+            hits++;
+            onHit(node);
+            return node.data;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void put(K key, byte[] data, long stamp) {
+        if (data.length > maxEntryWeight) {
+            return;
+        }
+
+        lock.lock();
+        try {
+            var existing = nodes.get(key);
+            if (existing != null) {
+                remove(existing);
+            }
+
+            var node = new Node<>(key, data, stamp);
+            nodes.put(key, node);
+            window.put(key, node);
+            windowWeight += data.length;
+            evict();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void invalidate(K key) {
+        lock.lock();
+        try {
+            var node = nodes.get(key);
+            if (node != null) {
+                remove(node);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    CacheStats stats() {
+        lock.lock();
+        try {
+            return new CacheStats(hits, misses, evictions, nodes.size(), windowWeight + probationWeight + protectedWeight);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void onHit(Node<K> node) {
+        switch (node.region) {
+            case WINDOW:
+                window.remove(node.key);
+                window.put(node.key, node);
+                break;
+            case PROBATION:
+                probation.remove(node.key);
+                probationWeight -= node.data.length;
+                node.region = Region.PROTECTED;
+                protectedRegion.put(node.key, node);
+                protectedWeight += node.data.length;
+                demoteProtected();
+                break;
+            case PROTECTED:
+                protectedRegion.remove(node.key);
+                protectedRegion.put(node.key, node);
+                break;
+        }
+    }
+
+    private void demoteProtected() {
+        while (protectedWeight > protectedMax) {
+            var lru = protectedRegion.values().iterator().next();
+            protectedRegion.remove(lru.key);
+            protectedWeight -= lru.data.length;
+            lru.region = Region.PROBATION;
+            probation.put(lru.key, lru);
+            probationWeight += lru.data.length;
+        }
+    }
+
+    private void evict() {
+        long mainMax = maxWeight - windowMax;
+        while (windowWeight > windowMax) {
+            var candidate = window.values().iterator().next();
+            window.remove(candidate.key);
+            windowWeight -= candidate.data.length;
+
+            // The candidate has to win against the least recently used entries of the main region to be admitted
+            boolean admitted = true;
+            while (probationWeight + protectedWeight + candidate.data.length > mainMax) {
+                var victims = !probation.isEmpty() ? probation : protectedRegion;
+                if (victims.isEmpty()) {
+                    break;
+                }
+
+                var victim = victims.values().iterator().next();
+                if (sketch.frequency(candidate.key.hashCode()) > sketch.frequency(victim.key.hashCode())) {
+                    remove(victim);
+                    evictions++;
+                } else {
+                    admitted = false;
+                    break;
+                }
+            }
+
+            if (admitted) {
+                candidate.region = Region.PROBATION;
+                probation.put(candidate.key, candidate);
+                probationWeight += candidate.data.length;
+            } else {
+                nodes.remove(candidate.key);
+                evictions++;
+            }
+        }
+    }
+
+    private void remove(Node<K> node) {
+        nodes.remove(node.key);
+        switch (node.region) {
+            case WINDOW:
+                window.remove(node.key);
+                windowWeight -= node.data.length;
+                break;
+            case PROBATION:
+                probation.remove(node.key);
+                probationWeight -= node.data.length;
+                break;
+            case PROTECTED:
+                protectedRegion.remove(node.key);
+                protectedWeight -= node.data.length;
+                break;
+        }
+    }
+}
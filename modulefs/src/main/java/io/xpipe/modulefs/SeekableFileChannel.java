@@ -0,0 +1,107 @@
+package io.xpipe.modulefs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A read-only file channel over a seekable channel, e.g. of a compressed entry.
+ * The contents don't exist as a region of any file, so they can't be mapped.
+ * Seeking backwards in compressed entries is expensive, so the wrapped channel is only repositioned when a read requires it.
+ */
+final class SeekableFileChannel extends ReadOnlyFileChannel {
+
+    private final SeekableByteChannel channel;
+    private long position;
+
+    SeekableFileChannel(SeekableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    private int readAt(ByteBuffer dst, long at) throws IOException {
+        if (channel.position() != at) {
+            channel.position(at);
+        }
+        return channel.read(dst);
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer dst) throws IOException {
+        ensureOpen();
+        int n = readAt(dst, position);
+        if (n > 0) {
+            position += n;
+        }
+        return n;
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer dst, long position) throws IOException {
+        ensureOpen();
+        if (position < 0) {
+            throw new IllegalArgumentException("Negative position");
+        }
+        // The wrapped channel stays where the read ended, so that consecutive positional reads continue sequentially
+        return readAt(dst, position);
+    }
+
+    @Override
+    public synchronized long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+        ensureOpen();
+        if (position < 0 || count < 0) {
+            throw new IllegalArgumentException("Negative position or count");
+        }
+
+        var buffer = ByteBuffer.allocate((int) Math.min(count, 64 * 1024));
+        long transferred = 0;
+        while (transferred < count) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), count - transferred));
+            int n = readAt(buffer, position + transferred);
+            if (n <= 0) {
+                break;
+            }
+
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                target.write(buffer);
+            }
+            transferred += n;
+        }
+        return transferred;
+    }
+
+    @Override
+    public synchronized long position() throws IOException {
+        ensureOpen();
+        return position;
+    }
+
+    @Override
+    public synchronized FileChannel position(long newPosition) throws IOException {
+        ensureOpen();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Negative position");
+        }
+        position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        ensureOpen();
+        return channel.size();
+    }
+
+    @Override
+    public MappedByteBuffer map(MapMode mode, long position, long size) {
+        throw new UnsupportedOperationException("The file contents are not stored as a region of a file and can't be mapped");
+    }
+
+    @Override
+    protected void implCloseChannel() throws IOException {
+        channel.close();
+    }
+}
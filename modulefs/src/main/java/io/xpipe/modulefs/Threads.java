@@ -0,0 +1,32 @@
+package io.xpipe.modulefs;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+final class Threads {
+
+    private Threads() {
+    }
+
+    /**
+     * Returns an executor that runs every task on a new virtual thread.
+     * Virtual threads are only available from Java 21 on, so older runtimes fall back to a small pool of daemon threads.
+     */
+    static ExecutorService newVirtualThreadExecutor(String name) {
+        try {
+            var m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) m.invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException ignored) {
+        }
+
+        var count = new AtomicInteger();
+        var threads = Math.min(Runtime.getRuntime().availableProcessors(), 8);
+        return Executors.newFixedThreadPool(threads, r -> {
+            var t = new Thread(r, name + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+}
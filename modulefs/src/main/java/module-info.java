@@ -4,6 +4,7 @@ import java.nio.file.spi.FileSystemProvider;
 
 module io.xpipe.modulefs {
     requires transitive jdk.zipfs;
+    requires static jdk.jfr;
 
     exports io.xpipe.modulefs;
     provides FileSystemProvider with ModuleFileSystemProvider;
@@ -0,0 +1,97 @@
+package io.xpipe.modulefs.tests;
+
+import io.xpipe.modulefs.ModuleFileSystem;
+import org.junit.jupiter.api.Assertions;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.FileLock;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AsyncTests {
+
+    private static final String MODULE = "module:/io.xpipe.modulefs.tests";
+
+    private static String read(AsynchronousFileChannel channel, long position, int length) throws Exception {
+        var buffer = ByteBuffer.allocate(length);
+        channel.read(buffer, position).get(10, TimeUnit.SECONDS);
+        return new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+    }
+
+    public void testAsyncRead() throws Exception {
+        for (var env : Backends.of(MODULE, Map.of())) {
+            try (var fs = ModuleFileSystem.create(MODULE, env);
+                 var channel = AsynchronousFileChannel.open(fs.getPath("io/xpipe/modulefs/tests/test_resource.txt"), StandardOpenOption.READ)) {
+                Assertions.assertEquals(8, channel.size());
+                Assertions.assertEquals("urce", read(channel, 4, 16));
+                Assertions.assertEquals("resource", read(channel, 0, 16));
+                Assertions.assertEquals("", read(channel, 8, 16));
+
+                var result = new CompletableFuture<Integer>();
+                var buffer = ByteBuffer.allocate(3);
+                channel.read(buffer, 2, null, new CompletionHandler<Integer, Void>() {
+                    @Override
+                    public void completed(Integer read, Void attachment) {
+                        result.complete(read);
+                    }
+
+                    @Override
+                    public void failed(Throwable exc, Void attachment) {
+                        result.completeExceptionally(exc);
+                    }
+                });
+                Assertions.assertEquals(3, result.get(10, TimeUnit.SECONDS));
+                Assertions.assertEquals("sou", new String(buffer.array(), StandardCharsets.UTF_8));
+
+                Assertions.assertThrows(UnsupportedOperationException.class, () -> AsynchronousFileChannel.open(
+                        fs.getPath("io/xpipe/modulefs/tests/test_resource.txt"), StandardOpenOption.WRITE));
+            }
+        }
+    }
+
+    public void testAsyncExecutor() throws Exception {
+        var used = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(2, r -> {
+            used.incrementAndGet();
+            var t = new Thread(r);
+            t.setDaemon(true);
+            return t;
+        });
+        try (var fs = ModuleFileSystem.create(MODULE, Map.of("async.executor", pool));
+             var channel = AsynchronousFileChannel.open(fs.getPath("io/xpipe/modulefs/tests/test_resource.txt"))) {
+            Assertions.assertEquals("resource", read(channel, 0, 8));
+            Assertions.assertTrue(used.get() > 0);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public void testAsyncLock() throws Exception {
+        for (var env : Backends.of(MODULE, Map.of())) {
+            FileLock lock;
+            try (var fs = ModuleFileSystem.create(MODULE, env);
+                 var channel = AsynchronousFileChannel.open(fs.getPath("io/xpipe/modulefs/tests/test_resource.txt"), StandardOpenOption.READ)) {
+                lock = channel.lock(0, Long.MAX_VALUE, true).get(10, TimeUnit.SECONDS);
+                Assertions.assertTrue(lock.isValid());
+                Assertions.assertTrue(lock.isShared());
+                Assertions.assertSame(channel, lock.acquiredBy());
+                lock.release();
+                Assertions.assertFalse(lock.isValid());
+
+                lock = channel.tryLock(0, 8, true);
+                Assertions.assertTrue(lock.isValid());
+                Assertions.assertThrows(NonWritableChannelException.class, () -> channel.tryLock(0, 8, false));
+            }
+            Assertions.assertFalse(lock.isValid());
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package io.xpipe.modulefs.tests;
+
+import org.junit.jupiter.api.Assertions;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.Map;
+
+public class BackendTests {
+
+    private static final String MODULE = "module:/io.xpipe.modulefs.tests";
+
+    public void testMappedBackendRead() throws IOException {
+        try (var fs = FileSystems.newFileSystem(URI.create(MODULE), Map.of("backend", "mapped"))) {
+            var p1 = fs.getPath("io/xpipe/modulefs/tests/test_resource.txt");
+            Assertions.assertEquals("resource", Files.readString(p1));
+            var p2 = fs.getPath("io/xpipe/modulefs/tests/empty_file.txt");
+            Assertions.assertEquals("", Files.readString(p2));
+            Assertions.assertThrows(NoSuchFileException.class,
+                    () -> Files.readString(fs.getPath("io/xpipe/modulefs/tests/missing.txt")));
+        }
+    }
+
+    public void testMappedBackendSeek() throws IOException {
+        try (var fs = FileSystems.newFileSystem(URI.create(MODULE), Map.of("backend", "mapped"))) {
+            var p = fs.getPath("io/xpipe/modulefs/tests/test_resource.txt");
+            try (var channel = Files.newByteChannel(p)) {
+                Assertions.assertEquals(8, channel.size());
+
+                var buffer = ByteBuffer.allocate(4);
+                channel.position(4);
+                channel.read(buffer);
+                Assertions.assertEquals("urce", new String(buffer.array(), StandardCharsets.UTF_8));
+
+                buffer.clear();
+                channel.position(0);
+                channel.read(buffer);
+                Assertions.assertEquals("reso", new String(buffer.array(), StandardCharsets.UTF_8));
+                Assertions.assertEquals(4, channel.position());
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package io.xpipe.modulefs.tests;
+
+import io.xpipe.modulefs.JarModuleFileSystem;
+import io.xpipe.modulefs.ModuleFileSystem;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Creates the options for running a test against every backend that a module can be opened with.
+ */
+final class Backends {
+
+    private Backends() {
+    }
+
+    static List<Map<String, Object>> of(String module, Map<String, ?> env) throws IOException {
+        var all = new ArrayList<Map<String, Object>>();
+        all.add(new HashMap<>(env));
+        try (var fs = ModuleFileSystem.create(module, env)) {
+            // The mapped backend only exists for jars
+            if (fs instanceof JarModuleFileSystem) {
+                var mapped = new HashMap<String, Object>(env);
+                mapped.put("backend", "mapped");
+                all.add(mapped);
+            }
+        }
+        return all;
+    }
+}
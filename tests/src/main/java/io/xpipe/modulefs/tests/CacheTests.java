@@ -0,0 +1,89 @@
+package io.xpipe.modulefs.tests;
+
+import io.xpipe.modulefs.JrtModuleFileSystem;
+import io.xpipe.modulefs.ModuleFileSystem;
+import org.junit.jupiter.api.Assertions;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+
+public class CacheTests {
+
+    private static final String MODULE = "module:/io.xpipe.modulefs.tests";
+
+    public void testCachedRead() throws IOException {
+        try (var fs = ModuleFileSystem.create(MODULE, Map.of("cache.maxBytes", 1024 * 1024))) {
+            var p = fs.getPath("io/xpipe/modulefs/tests/test_resource.txt");
+            Assertions.assertEquals("resource", Files.readString(p));
+            Assertions.assertEquals("resource", Files.readString(p));
+            Assertions.assertEquals("", Files.readString(fs.getPath("io/xpipe/modulefs/tests/empty_file.txt")));
+
+            var stats = fs.getCacheStats().orElseThrow();
+            Assertions.assertEquals(1, stats.getHitCount());
+            Assertions.assertEquals(2, stats.getMissCount());
+            Assertions.assertEquals(2, stats.getEntryCount());
+            Assertions.assertEquals(8, stats.getWeight());
+
+            try (var channel = Files.newByteChannel(p)) {
+                Assertions.assertThrows(NonWritableChannelException.class, () -> channel.write(ByteBuffer.allocate(1)));
+            }
+        }
+    }
+
+    public void testCacheMaxEntrySize() throws IOException {
+        try (var fs = ModuleFileSystem.create(MODULE, Map.of("cache.maxBytes", "1024", "cache.maxEntrySize", "4"))) {
+            var p = fs.getPath("io/xpipe/modulefs/tests/test_resource.txt");
+            Assertions.assertEquals("resource", Files.readString(p));
+            Assertions.assertEquals("resource", Files.readString(p));
+            Assertions.assertEquals(0, fs.getCacheStats().orElseThrow().getEntryCount());
+        }
+    }
+
+    /**
+     * Runs in a separate JVM, as the resource cache of jrt images is configured once per JVM.
+     */
+    public static final class JrtResourceCache {
+
+        public static void main(String[] args) throws IOException {
+            try (var fs = ModuleFileSystem.create(MODULE, Map.of("cache.maxBytes", 1024 * 1024))) {
+                // The contents are already cached for the whole image
+                Assertions.assertTrue(fs.getCacheStats().isEmpty());
+
+                var p = fs.getPath("io/xpipe/modulefs/tests/test_resource.txt");
+                Assertions.assertEquals("resource", Files.readString(p));
+                var hits = JrtModuleFileSystem.getResourceCacheStats().orElseThrow().getHitCount();
+                try (var channel = Files.newByteChannel(p)) {
+                    var buffer = ByteBuffer.allocate(4);
+                    channel.position(4);
+                    channel.read(buffer);
+                    System.out.print(new String(buffer.array(), StandardCharsets.UTF_8));
+                }
+                Assertions.assertEquals(hits + 1, JrtModuleFileSystem.getResourceCacheStats().orElseThrow().getHitCount());
+            }
+        }
+    }
+
+    public void testJrtResourceCache() throws Exception {
+        try (var fs = ModuleFileSystem.create(MODULE, Map.of("cache.maxBytes", 1024 * 1024))) {
+            if (!(fs instanceof JrtModuleFileSystem)) {
+                return;
+            }
+
+            // Disabled by default, so the file system caches contents itself
+            Assertions.assertTrue(JrtModuleFileSystem.getResourceCacheStats().isEmpty());
+            Assertions.assertTrue(fs.getCacheStats().isPresent());
+        }
+
+        Assertions.assertEquals("urce", CommonTests.runSeparately(JrtResourceCache.class, "io.xpipe.modulefs.jrt.cache.maxBytes=1048576"));
+    }
+
+    public void testCacheDisabled() throws IOException {
+        try (var fs = ModuleFileSystem.create(MODULE)) {
+            Assertions.assertTrue(fs.getCacheStats().isEmpty());
+        }
+    }
+}
@@ -1,18 +1,61 @@
 package io.xpipe.modulefs.tests;
 
+import io.xpipe.modulefs.ModuleFileSystem;
 import org.junit.jupiter.api.Assertions;
 
 import java.io.IOException;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedFileSystemException;
 import java.nio.file.FileSystemNotFoundException;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Map;
 
 public class CommonTests {
 
+    /**
+     * Runs in a separate JVM, as the provider is only constructed once per JVM.
+     */
+    public static final class EagerImage {
+
+        public static void main(String[] args) throws IOException {
+            try (var fs = FileSystems.newFileSystem(URI.create("module:/io.xpipe.modulefs.tests"), Map.of())) {
+                System.out.print(Files.readString(fs.getPath("io/xpipe/modulefs/tests/test_resource.txt")));
+            }
+        }
+    }
+
+    /**
+     * Runs the main method of a test class in a separate JVM with the same module setup and returns its output.
+     */
+    static String runSeparately(Class<?> main, String... properties) throws Exception {
+        var command = new ArrayList<String>();
+        command.add(ProcessHandle.current().info().command().orElse(Path.of(System.getProperty("java.home"), "bin", "java").toString()));
+        for (var property : properties) {
+            command.add("-D" + property);
+        }
+        var modulePath = System.getProperty("jdk.module.path");
+        if (modulePath != null) {
+            command.add("--module-path");
+            command.add(modulePath);
+        }
+        command.add("-m");
+        command.add("io.xpipe.modulefs.tests/" + main.getName());
+
+        var process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        var output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        Assertions.assertEquals(0, process.waitFor(), output);
+        return output;
+    }
+
+    public void testEagerImageProperty() throws Exception {
+        Assertions.assertEquals("resource", runSeparately(EagerImage.class, "io.xpipe.modulefs.jrt.eager=true"));
+    }
+
     public void testFileSystemRead() throws IOException {
         try (var fs = FileSystems.newFileSystem(
                 URI.create("module:/io.xpipe.modulefs.tests"), Map.of())) {
@@ -106,4 +149,37 @@ public class CommonTests {
         Assertions.assertTrue(Files.list(path).anyMatch(p -> p.getFileName().toString().equals("empty_file.txt")));
         path.getFileSystem().close();
     }
+
+    public void testLazyPathFromURI() throws IOException {
+        var uri = URI.create("module:/io.xpipe.modulefs.tests!/io/xpipe/modulefs/tests/test_resource.txt");
+        var path = Path.of(uri);
+        var fs = (ModuleFileSystem) path.getFileSystem();
+        try {
+            // The module is only opened once a file is accessed
+            Assertions.assertEquals("lazy", fs.stats().getBackend());
+            Assertions.assertSame(fs, Path.of(URI.create("module:/io.xpipe.modulefs.tests/io")).getFileSystem());
+            Assertions.assertEquals("/io/xpipe/modulefs/tests/test_resource.txt", path.toString());
+
+            Assertions.assertEquals("resource", Files.readString(path));
+            Assertions.assertNotEquals("lazy", fs.stats().getBackend());
+            Assertions.assertTrue(Files.isDirectory(path.getParent()));
+            try (var list = Files.list(path.getParent())) {
+                Assertions.assertTrue(list.anyMatch(p -> p.equals(path)));
+            }
+            Assertions.assertEquals(path, path.toRealPath());
+            Assertions.assertEquals(path, Path.of(path.toUri()));
+        } finally {
+            fs.close();
+        }
+        Assertions.assertThrows(ClosedFileSystemException.class, () -> Files.readString(path));
+        Assertions.assertNotSame(fs, Path.of(uri).getFileSystem());
+    }
+
+    public void testPathFromURIOfOpenFileSystem() throws IOException {
+        try (var fs = ModuleFileSystem.create("module:/io.xpipe.modulefs.tests")) {
+            var file = fs.getPath("io/xpipe/modulefs/tests/test_resource.txt");
+            Assertions.assertEquals(file, Path.of(file.toUri()));
+            Assertions.assertSame(fs, Path.of(URI.create("module:/io.xpipe.modulefs.tests/io")).getFileSystem());
+        }
+    }
 }
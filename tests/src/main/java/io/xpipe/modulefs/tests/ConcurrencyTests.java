@@ -0,0 +1,70 @@
+package io.xpipe.modulefs.tests;
+
+import org.junit.jupiter.api.Assertions;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class ConcurrencyTests {
+
+    private static final String MODULE = "module:/io.xpipe.modulefs.tests";
+    private static final int THREADS = 16;
+    private static final int ITERATIONS = 200;
+
+    public void testConcurrentOpenAndClose() throws Exception {
+        var executor = Executors.newFixedThreadPool(THREADS);
+        var start = new CountDownLatch(1);
+        var futures = new ArrayList<Future<?>>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    try (var fs = FileSystems.newFileSystem(URI.create(MODULE), Map.of())) {
+                        var p = fs.getPath("io/xpipe/modulefs/tests/test_resource.txt");
+                        Assertions.assertEquals("resource", Files.readString(p));
+                    }
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        try {
+            for (var f : futures) {
+                f.get();
+            }
+        } catch (ExecutionException e) {
+            Assertions.fail(e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+
+        Assertions.assertThrows(FileSystemNotFoundException.class,
+                () -> FileSystems.getFileSystem(URI.create(MODULE)));
+    }
+
+    public void testMultipleLiveFileSystems() throws IOException {
+        var first = FileSystems.newFileSystem(URI.create(MODULE), Map.of());
+        var second = FileSystems.newFileSystem(URI.create(MODULE), Map.of());
+        Assertions.assertEquals(first, FileSystems.getFileSystem(URI.create(MODULE)));
+
+        first.close();
+        Assertions.assertFalse(first.isOpen());
+        Assertions.assertEquals(second, FileSystems.getFileSystem(URI.create(MODULE)));
+        var p = second.getPath("io/xpipe/modulefs/tests/test_resource.txt");
+        Assertions.assertEquals("resource", Files.readString(p));
+
+        second.close();
+        Assertions.assertThrows(FileSystemNotFoundException.class,
+                () -> FileSystems.getFileSystem(URI.create(MODULE)));
+    }
+}
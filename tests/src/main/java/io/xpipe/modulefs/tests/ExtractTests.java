@@ -0,0 +1,61 @@
+package io.xpipe.modulefs.tests;
+
+import io.xpipe.modulefs.ModuleFileSystem;
+import io.xpipe.modulefs.ModuleFiles;
+import io.xpipe.modulefs.ModulePath;
+import org.junit.jupiter.api.Assertions;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+public class ExtractTests {
+
+    private static final String MODULE = "module:/io.xpipe.modulefs.tests";
+
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> walk = Files.walk(dir)) {
+            for (var p : (Iterable<Path>) walk.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    public void testExtract() throws IOException {
+        for (var env : Backends.of(MODULE, Map.of())) {
+            var target = Files.createTempDirectory("modulefs");
+            try (var fs = ModuleFileSystem.create(MODULE, env)) {
+                var source = (ModulePath) fs.getPath("io/xpipe/modulefs/tests");
+                var copied = new AtomicInteger();
+                var skipped = new AtomicInteger();
+                ModuleFiles.extract(source, target, 4, (s, t, size, skip) -> (skip ? skipped : copied).incrementAndGet());
+                Assertions.assertTrue(copied.get() > 2);
+                Assertions.assertEquals(0, skipped.get());
+                Assertions.assertEquals("resource", Files.readString(target.resolve("test_resource.txt")));
+                Assertions.assertEquals(0, Files.size(target.resolve("empty_file.txt")));
+                Assertions.assertArrayEquals(
+                        Files.readAllBytes(source.resolve("CommonTests.class")),
+                        Files.readAllBytes(target.resolve("CommonTests.class")));
+
+                // Same size, but different contents
+                Files.writeString(target.resolve("test_resource.txt"), "modified");
+                copied.set(0);
+                skipped.set(0);
+                ModuleFiles.extract(source, target, 4, (s, t, size, skip) -> (skip ? skipped : copied).incrementAndGet());
+                Assertions.assertEquals(1, copied.get());
+                Assertions.assertTrue(skipped.get() > 1);
+                Assertions.assertEquals("resource", Files.readString(target.resolve("test_resource.txt")));
+
+                var file = target.resolve("single").resolve("file.txt");
+                ModuleFiles.extract(fs.getPath("io/xpipe/modulefs/tests/test_resource.txt"), file);
+                Assertions.assertEquals("resource", Files.readString(file));
+            } finally {
+                delete(target);
+            }
+        }
+    }
+}
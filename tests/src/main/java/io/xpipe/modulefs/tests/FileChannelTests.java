@@ -0,0 +1,162 @@
+package io.xpipe.modulefs.tests;
+
+import io.xpipe.modulefs.ModuleFileSystem;
+import org.junit.jupiter.api.Assertions;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class FileChannelTests {
+
+    private static final String MODULE = "module:/io.xpipe.modulefs.tests";
+
+    private static String read(FileChannel channel, long position, int length) throws IOException {
+        var buffer = ByteBuffer.allocate(length);
+        channel.read(buffer, position);
+        return new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+    }
+
+    private static String content(ByteBuffer buffer) {
+        var bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public void testFileChannel() throws IOException {
+        for (var env : Backends.of(MODULE, Map.of())) {
+            try (var fs = ModuleFileSystem.create(MODULE, env);
+                 var channel = FileChannel.open(fs.getPath("io/xpipe/modulefs/tests/test_resource.txt"))) {
+                Assertions.assertEquals(8, channel.size());
+                Assertions.assertEquals("urce", read(channel, 4, 16));
+                Assertions.assertEquals(0, channel.position());
+
+                channel.position(2);
+                var buffer = ByteBuffer.allocate(3);
+                Assertions.assertEquals(3, channel.read(buffer));
+                Assertions.assertEquals("sou", new String(buffer.array(), StandardCharsets.UTF_8));
+                Assertions.assertEquals(5, channel.position());
+                Assertions.assertEquals("", read(channel, 8, 16));
+
+                var out = new ByteArrayOutputStream();
+                Assertions.assertEquals(8, channel.transferTo(0, 16, Channels.newChannel(out)));
+                Assertions.assertEquals("resource", out.toString(StandardCharsets.UTF_8));
+
+                // Only files that exist as a region of a file can be mapped
+                try {
+                    Assertions.assertEquals("resource", content(channel.map(FileChannel.MapMode.READ_ONLY, 0, 8)));
+                } catch (UnsupportedOperationException ignored) {
+                }
+
+                Assertions.assertThrows(NonWritableChannelException.class, () -> channel.write(ByteBuffer.allocate(1)));
+                Assertions.assertThrows(UnsupportedOperationException.class, () -> FileChannel.open(
+                        fs.getPath("io/xpipe/modulefs/tests/test_resource.txt"), StandardOpenOption.WRITE));
+            }
+        }
+    }
+
+    public void testLayerFileChannel() throws IOException {
+        try (var fs = ModuleFileSystem.create("module:/*", Map.of());
+             var channel = FileChannel.open(fs.getPath("io/xpipe/modulefs/tests/test_resource.txt"))) {
+            Assertions.assertEquals("resource", read(channel, 0, 8));
+        }
+    }
+
+    public void testJarEntryMapping() throws IOException {
+        var jar = Files.createTempDirectory("modulefs").resolve("entries.jar");
+        try {
+            try (var zip = FileSystems.newFileSystem(jar, Map.of("create", "true", "noCompression", "true"))) {
+                Files.writeString(zip.getPath("stored.txt"), "stored");
+            }
+            try (var zip = FileSystems.newFileSystem(jar, Map.of())) {
+                Files.writeString(zip.getPath("deflated.txt"), "deflated".repeat(100));
+            }
+
+            for (var env : List.<Map<String, Object>>of(Map.of(), Map.of("backend", "mapped"))) {
+                var withLocation = new HashMap<>(env);
+                withLocation.put("location", jar.toUri());
+                testJarEntryMapping(withLocation);
+            }
+        } finally {
+            Files.delete(jar);
+            Files.delete(jar.getParent());
+        }
+    }
+
+    public void testDeflatedEntryTransfer() throws IOException {
+        var jar = Files.createTempDirectory("modulefs").resolve("large.jar");
+        try {
+            // Compressible, but not trivially so, to get realistic inflation costs
+            var data = new byte[16 * 1024 * 1024];
+            var random = new Random(0);
+            for (int i = 0; i < data.length; i++) {
+                data[i] = (byte) ('a' + random.nextInt(8));
+            }
+            try (var zip = FileSystems.newFileSystem(jar, Map.of("create", "true"))) {
+                Files.write(zip.getPath("large.bin"), data);
+            }
+
+            for (var env : List.<Map<String, Object>>of(Map.of(), Map.of("backend", "mapped"))) {
+                var withLocation = new HashMap<>(env);
+                withLocation.put("location", jar.toUri());
+                testDeflatedEntryTransfer(withLocation, data);
+            }
+        } finally {
+            Files.delete(jar);
+            Files.delete(jar.getParent());
+        }
+    }
+
+    private void testDeflatedEntryTransfer(Map<String, ?> env, byte[] data) throws IOException {
+        try (var fs = ModuleFileSystem.create("module:/io.xpipe.modulefs.large", env);
+             var channel = FileChannel.open(fs.getPath("large.bin"))) {
+            long start = System.nanoTime();
+            var out = new ByteArrayOutputStream(data.length);
+            Assertions.assertEquals(data.length, channel.transferTo(0, data.length, Channels.newChannel(out)));
+            // Restarting the inflation for every chunk takes far longer than this
+            Assertions.assertTrue(System.nanoTime() - start < 5_000_000_000L);
+            Assertions.assertArrayEquals(data, out.toByteArray());
+            Assertions.assertEquals(0, channel.position());
+
+            var buffer = ByteBuffer.allocate(4);
+            channel.read(buffer, 8 * 1024 * 1024);
+            Assertions.assertArrayEquals(Arrays.copyOfRange(data, 8 * 1024 * 1024, 8 * 1024 * 1024 + 4), buffer.array());
+            buffer.clear();
+            channel.read(buffer);
+            Assertions.assertArrayEquals(Arrays.copyOfRange(data, 0, 4), buffer.array());
+            Assertions.assertEquals(4, channel.position());
+        }
+    }
+
+    private void testJarEntryMapping(Map<String, ?> env) throws IOException {
+        try (var fs = ModuleFileSystem.create("module:/io.xpipe.modulefs.entries", env)) {
+            try (var channel = FileChannel.open(fs.getPath("stored.txt"))) {
+                var mapped = channel.map(FileChannel.MapMode.READ_ONLY, 2, 4);
+                Assertions.assertTrue(mapped.isReadOnly());
+                Assertions.assertEquals("ored", content(mapped));
+                Assertions.assertThrows(NonWritableChannelException.class, () -> channel.map(FileChannel.MapMode.READ_WRITE, 0, 6));
+                Assertions.assertThrows(IllegalArgumentException.class, () -> channel.map(FileChannel.MapMode.READ_ONLY, 0, 7));
+            }
+
+            try (var channel = FileChannel.open(fs.getPath("deflated.txt"))) {
+                Assertions.assertEquals(800, channel.size());
+                Assertions.assertEquals("deflated", read(channel, 792, 16));
+                Assertions.assertThrows(UnsupportedOperationException.class, () -> channel.map(FileChannel.MapMode.READ_ONLY, 0, 8));
+            }
+
+            Assertions.assertThrows(IOException.class, () -> FileChannel.open(fs.getPath("missing.txt")));
+        }
+    }
+}
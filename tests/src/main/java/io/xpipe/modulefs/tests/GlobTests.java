@@ -0,0 +1,102 @@
+package io.xpipe.modulefs.tests;
+
+import io.xpipe.modulefs.ModuleFileSystem;
+import io.xpipe.modulefs.ModuleFiles;
+import org.junit.jupiter.api.Assertions;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+public class GlobTests {
+
+    private static final String MODULE = "module:/io.xpipe.modulefs.tests";
+
+    private static final List<String> GLOBS = List.of(
+            "*",
+            "**",
+            "io/*",
+            "io/**/*.txt",
+            "**/*.class",
+            "**.txt",
+            "io/xpipe/modulefs/tests/{test_resource,empty_file}.txt",
+            "io/x?ipe/**",
+            "io/xpipe/modulefs/tests/[A-C]*.class",
+            "io/xpipe/modulefs/tests/[!A-C]*.class",
+            "io/xpipe/**/tests",
+            "io/xpipe/modulefs/tests/missing.txt");
+
+    public void testFindMatchesPathMatcher() throws IOException {
+        try (var fs = ModuleFileSystem.create(MODULE)) {
+            var root = fs.getPath("/");
+            for (var glob : GLOBS) {
+                // The default file system implements the standard glob semantics for relative paths with '/' separators
+                var reference = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+                var matcher = fs.getPathMatcher("glob:" + glob);
+                Set<String> expected;
+                try (var walk = Files.walk(root)) {
+                    expected = walk.filter(p -> !p.equals(root))
+                            .map(p -> root.relativize(p).toString())
+                            .filter(s -> reference.matches(Path.of(s)))
+                            .collect(Collectors.toSet());
+                }
+
+                Set<String> found;
+                try (var stream = ModuleFiles.find(root, glob)) {
+                    found = stream.map(p -> root.relativize(p).toString()).collect(Collectors.toSet());
+                }
+                Assertions.assertEquals(expected, found, glob);
+
+                try (var walk = Files.walk(root)) {
+                    var matched = walk.filter(p -> !p.equals(root))
+                            .map(root::relativize)
+                            .filter(matcher::matches)
+                            .map(Path::toString)
+                            .collect(Collectors.toSet());
+                    Assertions.assertEquals(expected, matched, glob);
+                }
+            }
+        }
+    }
+
+    public void testPathMatcherOnAbsolutePaths() throws IOException {
+        try (var fs = ModuleFileSystem.create(MODULE)) {
+            var root = fs.getPath("/");
+            for (var glob : GLOBS) {
+                var reference = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+                var matcher = fs.getPathMatcher("glob:" + glob);
+                try (var walk = Files.walk(root)) {
+                    for (var p : (Iterable<Path>) walk.filter(p -> !p.equals(root))::iterator) {
+                        Assertions.assertTrue(p.isAbsolute());
+                        var expected = reference.matches(Path.of(root.relativize(p).toString()));
+                        Assertions.assertEquals(expected, matcher.matches(p), glob + " " + p);
+                    }
+                }
+            }
+
+            var file = fs.getPath("io/xpipe/modulefs/tests/test_resource.txt");
+            Assertions.assertTrue(fs.getPathMatcher("glob:**/*.txt").matches(file));
+            Assertions.assertTrue(fs.getPathMatcher("glob:**").matches(file));
+            Assertions.assertTrue(fs.getPathMatcher("glob:io/xpipe/modulefs/tests/test_resource.txt").matches(file));
+            Assertions.assertTrue(fs.getPathMatcher("glob:/io/**.txt").matches(file));
+            Assertions.assertFalse(fs.getPathMatcher("glob:/io/**").matches(root.relativize(file)));
+        }
+    }
+
+    public void testFindInDirectory() throws IOException {
+        try (var fs = ModuleFileSystem.create(MODULE)) {
+            var dir = fs.getPath("io/xpipe/modulefs");
+            try (var stream = ModuleFiles.find(dir, "tests/*.txt")) {
+                Assertions.assertEquals(
+                        Set.of(dir.resolve("tests/test_resource.txt"), dir.resolve("tests/empty_file.txt")),
+                        stream.collect(Collectors.toSet()));
+            }
+
+            Assertions.assertThrows(IllegalArgumentException.class, () -> ModuleFiles.find(dir, "/tests/*.txt"));
+            Assertions.assertThrows(NotDirectoryException.class, () -> ModuleFiles.find(fs.getPath("io/xpipe/modulefs/tests/test_resource.txt"), "*"));
+            Assertions.assertThrows(NoSuchFileException.class, () -> ModuleFiles.find(fs.getPath("io/xpipe/modulefs/missing"), "*"));
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package io.xpipe.modulefs.tests;
+
+import io.xpipe.modulefs.ModuleFileSystem;
+import io.xpipe.modulefs.ModuleIndexWriter;
+import org.junit.jupiter.api.Assertions;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+public class IndexTests {
+
+    private static final String MODULE = "module:/io.xpipe.modulefs.tests";
+
+    public void testIndexLookup() throws IOException {
+        for (var env : Backends.of(MODULE, Map.of("index", true))) {
+            try (var fs = FileSystems.newFileSystem(URI.create(MODULE), env)) {
+                var dir = fs.getPath("io/xpipe/modulefs/tests");
+                Assertions.assertTrue(Files.isDirectory(dir));
+                Assertions.assertTrue(Files.exists(dir.resolve("test_resource.txt")));
+                Assertions.assertFalse(Files.exists(dir.resolve("missing.txt")));
+                Assertions.assertTrue(Files.isRegularFile(dir.resolve("test_resource.txt")));
+                Assertions.assertEquals(8, Files.size(dir.resolve("test_resource.txt")));
+                Assertions.assertEquals(0, Files.size(dir.resolve("empty_file.txt")));
+
+                try (var list = Files.list(dir)) {
+                    var names = list.map(p -> p.getFileName().toString()).collect(Collectors.toSet());
+                    Assertions.assertTrue(names.contains("test_resource.txt"));
+                    Assertions.assertTrue(names.contains("empty_file.txt"));
+                    Assertions.assertTrue(names.contains("CommonTests.class"));
+                }
+
+                Assertions.assertThrows(NotDirectoryException.class,
+                        () -> Files.newDirectoryStream(dir.resolve("test_resource.txt")).close());
+                Assertions.assertThrows(NoSuchFileException.class,
+                        () -> Files.newDirectoryStream(dir.resolve("missing")).close());
+                Assertions.assertEquals("resource", Files.readString(dir.resolve("test_resource.txt")));
+            }
+        }
+    }
+
+    private void testStoredIndex(Map<String, ?> env) throws IOException {
+        try (var fs = ModuleFileSystem.create("module:/io.xpipe.modulefs.stored", env)) {
+            // Files added after writing the index are only visible without it
+            var indexed = !Boolean.FALSE.equals(env.get("index"));
+            var dir = fs.getPath("a");
+            Assertions.assertTrue(Files.isDirectory(dir));
+            Assertions.assertEquals(5, Files.size(dir.resolve("b.txt")));
+            Assertions.assertEquals(!indexed, Files.exists(fs.getPath(ModuleIndexWriter.LOCATION)));
+            Assertions.assertEquals(!indexed, Files.exists(dir.resolve("late.txt")));
+            try (var list = Files.list(dir)) {
+                var names = list.map(p -> p.getFileName().toString()).collect(Collectors.toSet());
+                Assertions.assertEquals(indexed ? Set.of("b.txt", "c") : Set.of("b.txt", "c", "late.txt"), names);
+            }
+            Assertions.assertEquals("hello", Files.readString(dir.resolve("b.txt")));
+        }
+    }
+
+    public void testStoredJarIndex() throws IOException {
+        var jar = Files.createTempDirectory("modulefs").resolve("stored.jar");
+        try {
+            try (var zip = FileSystems.newFileSystem(jar, Map.of("create", "true"))) {
+                Files.createDirectories(zip.getPath("a/c"));
+                Files.writeString(zip.getPath("a/b.txt"), "hello");
+            }
+            ModuleIndexWriter.write(jar);
+            try (var zip = FileSystems.newFileSystem(jar, Map.of())) {
+                Files.writeString(zip.getPath("a/late.txt"), "late");
+            }
+
+            for (var env : List.<Map<String, Object>>of(Map.of(), Map.of("backend", "mapped"), Map.of("index", false))) {
+                var withLocation = new HashMap<>(env);
+                withLocation.put("location", jar.toUri());
+                testStoredIndex(withLocation);
+            }
+        } finally {
+            Files.delete(jar);
+            Files.delete(jar.getParent());
+        }
+    }
+
+    public void testAppendedJarIndex() throws IOException {
+        var jar = Files.createTempDirectory("modulefs").resolve("appended.jar");
+        try {
+            try (var zip = FileSystems.newFileSystem(jar, Map.of("create", "true"))) {
+                Files.createDirectories(zip.getPath("a"));
+                Files.writeString(zip.getPath("a/b.txt"), "hello".repeat(100));
+            }
+            var before = Files.readAllBytes(jar);
+            ModuleIndexWriter.write(jar);
+            ModuleIndexWriter.write(jar);
+
+            try (var zip = new ZipFile(jar.toFile())) {
+                // The index is found with the first central directory header and the other entries are not moved
+                Assertions.assertEquals(ModuleIndexWriter.LOCATION, zip.entries().nextElement().getName());
+                Assertions.assertEquals(3, zip.size());
+                Assertions.assertEquals("hello".repeat(100), new String(zip.getInputStream(zip.getEntry("a/b.txt")).readAllBytes()));
+            }
+            var after = Files.readAllBytes(jar);
+            int localEntries = ByteBuffer.wrap(before).order(ByteOrder.LITTLE_ENDIAN).getInt(before.length - 6);
+            Assertions.assertArrayEquals(Arrays.copyOf(before, localEntries), Arrays.copyOf(after, localEntries));
+
+            for (var env : List.<Map<String, Object>>of(Map.of(), Map.of("backend", "mapped"))) {
+                var withLocation = new HashMap<>(env);
+                withLocation.put("location", jar.toUri());
+                try (var fs = ModuleFileSystem.create("module:/io.xpipe.modulefs.appended", withLocation)) {
+                    Assertions.assertEquals("hello".repeat(100), Files.readString(fs.getPath("a/b.txt")));
+                    Assertions.assertFalse(Files.exists(fs.getPath(ModuleIndexWriter.LOCATION)));
+                }
+            }
+        } finally {
+            Files.delete(jar);
+            Files.delete(jar.getParent());
+        }
+    }
+
+    public void testZip64JarIndex() throws IOException {
+        var jar = Files.createTempDirectory("modulefs").resolve("zip64.jar");
+        try {
+            // More entries than the end record can hold require a ZIP64 end record
+            try (var out = new ZipOutputStream(Files.newOutputStream(jar))) {
+                for (int i = 0; i < 70000; i++) {
+                    out.putNextEntry(new ZipEntry("a/" + i + ".txt"));
+                    out.write(Integer.toString(i).getBytes(StandardCharsets.UTF_8));
+                    out.closeEntry();
+                }
+            }
+
+            for (int run = 0; run < 2; run++) {
+                for (var env : List.<Map<String, Object>>of(Map.of(), Map.of("backend", "mapped"))) {
+                    var withLocation = new HashMap<>(env);
+                    withLocation.put("location", jar.toUri());
+                    try (var fs = ModuleFileSystem.create("module:/io.xpipe.modulefs.zip64", withLocation)) {
+                        Assertions.assertEquals("69999", Files.readString(fs.getPath("a/69999.txt")));
+                        try (var list = Files.list(fs.getPath("a"))) {
+                            Assertions.assertEquals(70000, list.count());
+                        }
+                    }
+                }
+
+                // The second run reads the stored index
+                ModuleIndexWriter.write(jar);
+            }
+
+            try (var zip = new ZipFile(jar.toFile())) {
+                Assertions.assertEquals(70001, zip.size());
+                Assertions.assertEquals("12345", new String(zip.getInputStream(zip.getEntry("a/12345.txt")).readAllBytes(), StandardCharsets.UTF_8));
+            }
+        } finally {
+            Files.delete(jar);
+            Files.delete(jar.getParent());
+        }
+    }
+
+    public void testStoredDirectoryIndex() throws IOException {
+        var dir = Files.createTempDirectory("modulefs");
+        try {
+            Files.createDirectories(dir.resolve("a/c"));
+            Files.writeString(dir.resolve("a/b.txt"), "hello");
+            ModuleIndexWriter.write(dir);
+            Files.writeString(dir.resolve("a/late.txt"), "late");
+            testStoredIndex(Map.of("location", dir.toUri()));
+            testStoredIndex(Map.of("location", dir.toUri(), "index", false));
+        } finally {
+            try (var walk = Files.walk(dir)) {
+                for (var p : (Iterable<Path>) walk.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(p);
+                }
+            }
+        }
+    }
+
+    public void testCorruptStoredIndex() throws IOException {
+        var dir = Files.createTempDirectory("modulefs");
+        try {
+            Files.createDirectories(dir.resolve("a"));
+            ModuleIndexWriter.write(dir);
+            var index = dir.resolve(ModuleIndexWriter.LOCATION);
+            var data = Files.readAllBytes(index);
+            // Magic, version, entry count, name length and names, then the name length, type and child count of the root.
+            // An additional child would be out of range
+            data[12 + data[9]]++;
+            Files.write(index, data);
+            var e = Assertions.assertThrows(IOException.class,
+                    () -> ModuleFileSystem.create("module:/io.xpipe.modulefs.corrupt", Map.of("location", dir.toUri())).close());
+            Assertions.assertEquals("Module index is corrupt", e.getMessage());
+
+            Files.write(index, Arrays.copyOf(data, data.length - 1));
+            Assertions.assertThrows(IOException.class,
+                    () -> ModuleFileSystem.create("module:/io.xpipe.modulefs.corrupt", Map.of("location", dir.toUri())).close());
+        } finally {
+            try (var walk = Files.walk(dir)) {
+                for (var p : (Iterable<Path>) walk.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(p);
+                }
+            }
+        }
+    }
+}
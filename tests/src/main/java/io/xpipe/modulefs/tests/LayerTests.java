@@ -0,0 +1,83 @@
+package io.xpipe.modulefs.tests;
+
+import io.xpipe.modulefs.LayerFileSystem;
+import io.xpipe.modulefs.ModuleFileSystem;
+import org.junit.jupiter.api.Assertions;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.*;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+public class LayerTests {
+
+    public void testLayerLookup() throws IOException {
+        try (var fs = (LayerFileSystem) ModuleFileSystem.create("module:/*")) {
+            Assertions.assertTrue(fs.isReadOnly());
+            var resource = fs.getPath("io/xpipe/modulefs/tests/test_resource.txt");
+            Assertions.assertTrue(Files.isRegularFile(resource));
+            Assertions.assertEquals("resource", Files.readString(resource));
+            Assertions.assertEquals(Optional.of("io.xpipe.modulefs.tests"), fs.getOwner(resource));
+            Assertions.assertEquals(resource, resource.toRealPath());
+
+            var object = fs.getPath("java/lang/Object.class");
+            Assertions.assertEquals(Optional.of("java.base"), fs.getOwner(object));
+            Assertions.assertTrue(Files.size(object) > 0);
+
+            var missing = fs.getPath("io/xpipe/missing.txt");
+            Assertions.assertFalse(Files.exists(missing));
+            Assertions.assertEquals(Optional.empty(), fs.getOwner(missing));
+            Assertions.assertThrows(NoSuchFileException.class, () -> Files.readString(missing));
+            Assertions.assertThrows(UnsupportedOperationException.class, () -> Files.writeString(resource, "test"));
+        }
+    }
+
+    public void testLayerListing() throws IOException {
+        try (var fs = ModuleFileSystem.create("module:/*")) {
+            // Directories of different modules are merged
+            try (var list = Files.list(fs.getPath("io/xpipe/modulefs"))) {
+                var names = list.map(p -> p.getFileName().toString()).collect(Collectors.toSet());
+                Assertions.assertTrue(names.contains("tests"));
+                Assertions.assertTrue(names.contains("ModuleFileSystem.class"));
+            }
+            Assertions.assertThrows(NotDirectoryException.class,
+                    () -> Files.newDirectoryStream(fs.getPath("java/lang/Object.class")).close());
+        }
+    }
+
+    public void testLayerOpensModulesLazily() throws IOException {
+        var uri = URI.create("module:/java.base");
+        try (var fs = ModuleFileSystem.create("module:/*")) {
+            Assertions.assertTrue(Files.exists(fs.getPath("java/lang/String.class")));
+            Assertions.assertThrows(FileSystemNotFoundException.class, () -> FileSystems.getFileSystem(uri));
+
+            Files.readAllBytes(fs.getPath("java/lang/String.class"));
+            Assertions.assertTrue(FileSystems.getFileSystem(uri).isOpen());
+        }
+        Assertions.assertThrows(FileSystemNotFoundException.class, () -> FileSystems.getFileSystem(uri));
+    }
+
+    public void testLayerSearch() {
+        List<Path> found;
+        try (var stream = ModuleFileSystem.find(ModuleLayer.boot(), "io/xpipe/modulefs/tests/*.txt")) {
+            found = stream.collect(Collectors.toList());
+            Assertions.assertEquals(
+                    Set.of("/io/xpipe/modulefs/tests/test_resource.txt", "/io/xpipe/modulefs/tests/empty_file.txt"),
+                    found.stream().map(Path::toString).collect(Collectors.toSet()));
+            for (var p : found) {
+                Assertions.assertEquals("io.xpipe.modulefs.tests", ((ModuleFileSystem) p.getFileSystem()).getModule());
+                Assertions.assertTrue(Files.isRegularFile(p));
+            }
+        }
+        Assertions.assertFalse(found.get(0).getFileSystem().isOpen());
+
+        try (var stream = ModuleFileSystem.find(ModuleLayer.boot(), "module-info.class")) {
+            var modules = stream.map(p -> ((ModuleFileSystem) p.getFileSystem()).getModule()).collect(Collectors.toSet());
+            var expected = ModuleLayer.boot().modules().stream().map(Module::getName).collect(Collectors.toSet());
+            Assertions.assertEquals(expected, modules);
+        }
+    }
+}
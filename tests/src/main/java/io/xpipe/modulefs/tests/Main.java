@@ -1,16 +1,20 @@
 package io.xpipe.modulefs.tests;
 
+import java.lang.reflect.Modifier;
+
 public class Main {
 
     public static void main(String[] args) throws Exception {
-        var ct = new CommonTests();
-        for (var method : CommonTests.class.getDeclaredMethods()) {
-            if (method.isSynthetic()) {
-                continue;
-            }
+        for (var c : new Class<?>[] {CommonTests.class, ConcurrencyTests.class, BackendTests.class, IndexTests.class, CacheTests.class, PathTests.class, WalkTests.class, ExtractTests.class, ProfileTests.class, LayerTests.class, GlobTests.class, AsyncTests.class, FileChannelTests.class, StatsTests.class, PoolTests.class, WatchTests.class, NestedJarTests.class, MultiReleaseTests.class}) {
+            var instance = c.getConstructor().newInstance();
+            for (var method : c.getDeclaredMethods()) {
+                if (method.isSynthetic() || !Modifier.isPublic(method.getModifiers())) {
+                    continue;
+                }
 
-            System.out.println("Running " + method.getName());
-            method.invoke(ct);
+                System.out.println("Running " + method.getName());
+                method.invoke(instance);
+            }
         }
     }
 }
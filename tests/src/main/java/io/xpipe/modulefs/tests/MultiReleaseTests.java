@@ -0,0 +1,84 @@
+package io.xpipe.modulefs.tests;
+
+import io.xpipe.modulefs.ModuleFileSystem;
+import org.junit.jupiter.api.Assertions;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+public class MultiReleaseTests {
+
+    private static void writeJar(Path jar) throws IOException {
+        try (var zip = FileSystems.newFileSystem(jar, Map.of("create", "true"))) {
+            Files.createDirectories(zip.getPath("META-INF/versions/9/a"));
+            Files.createDirectories(zip.getPath("META-INF/versions/11/a"));
+            Files.createDirectories(zip.getPath("META-INF/versions/9999/a"));
+            Files.createDirectories(zip.getPath("a"));
+            Files.writeString(zip.getPath("META-INF/MANIFEST.MF"), "Manifest-Version: 1.0\nMulti-Release: true\n");
+            Files.writeString(zip.getPath("a/A.txt"), "base");
+            Files.writeString(zip.getPath("a/B.txt"), "base");
+            Files.writeString(zip.getPath("META-INF/versions/9/a/A.txt"), "nine");
+            Files.writeString(zip.getPath("META-INF/versions/9/a/B.txt"), "nine");
+            Files.writeString(zip.getPath("META-INF/versions/9/a/Only9.txt"), "only nine");
+            Files.writeString(zip.getPath("META-INF/versions/11/a/A.txt"), "eleven");
+            Files.writeString(zip.getPath("META-INF/versions/9999/a/A.txt"), "future");
+        }
+    }
+
+    private static List<String> list(Path dir) throws IOException {
+        try (var list = Files.list(dir)) {
+            return list.map(p -> p.getFileName().toString()).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static ModuleFileSystem open(Path jar, Map<String, ?> env) throws IOException {
+        var withLocation = new HashMap<String, Object>(env);
+        withLocation.put("location", jar.toUri());
+        return ModuleFileSystem.create("module:/io.xpipe.modulefs.multirelease", withLocation);
+    }
+
+    private void testVersionedView(Path jar, Map<String, ?> env) throws IOException {
+        var versioned = new HashMap<String, Object>(env);
+        versioned.put("releaseVersion", "runtime");
+        try (var fs = open(jar, versioned)) {
+            Assertions.assertEquals("eleven", Files.readString(fs.getPath("a/A.txt")));
+            Assertions.assertEquals(6, Files.size(fs.getPath("a/A.txt")));
+            Assertions.assertEquals("nine", Files.readString(fs.getPath("a/B.txt")));
+            Assertions.assertEquals("only nine", Files.readString(fs.getPath("a/Only9.txt")));
+            Assertions.assertEquals(List.of("A.txt", "B.txt", "Only9.txt"), list(fs.getPath("a")));
+            try (var channel = FileChannel.open(fs.getPath("a/A.txt"))) {
+                Assertions.assertEquals(6, channel.size());
+            }
+        }
+
+        versioned.put("releaseVersion", 9);
+        try (var fs = open(jar, versioned)) {
+            Assertions.assertEquals("nine", Files.readString(fs.getPath("a/A.txt")));
+        }
+
+        try (var fs = open(jar, env)) {
+            Assertions.assertEquals("base", Files.readString(fs.getPath("a/A.txt")));
+            Assertions.assertEquals(List.of("A.txt", "B.txt"), list(fs.getPath("a")));
+        }
+    }
+
+    public void testVersionedView() throws IOException {
+        var jar = Files.createTempDirectory("modulefs").resolve("multirelease.jar");
+        try {
+            writeJar(jar);
+            testVersionedView(jar, Map.of());
+            testVersionedView(jar, Map.of("backend", "mapped"));
+            testVersionedView(jar, Map.of("index", true));
+        } finally {
+            Files.delete(jar);
+            Files.delete(jar.getParent());
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package io.xpipe.modulefs.tests;
+
+import io.xpipe.modulefs.ModuleFileSystem;
+import org.junit.jupiter.api.Assertions;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+public class NestedJarTests {
+
+    private static final String MODULE = "module:/io.xpipe.modulefs.nested";
+    private static final String CACHE_DIR_PROPERTY = "io.xpipe.modulefs.nested.cacheDir";
+    private static final String IDLE_PROPERTY = "io.xpipe.modulefs.pool.idleMillis";
+
+    private interface DirTest {
+
+        void run(Path dir) throws Exception;
+    }
+
+    private static void withDir(DirTest test) throws Exception {
+        var dir = Files.createTempDirectory("modulefs");
+        try {
+            test.run(dir);
+        } finally {
+            try (var walk = Files.walk(dir)) {
+                for (var p : (Iterable<Path>) walk.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(p);
+                }
+            }
+        }
+    }
+
+    private static void writeJar(Path jar, boolean compress, Map<String, byte[]> entries) throws IOException {
+        try (var zip = FileSystems.newFileSystem(jar, Map.of("create", "true", "noCompression", String.valueOf(!compress)))) {
+            for (var e : entries.entrySet()) {
+                var p = zip.getPath(e.getKey());
+                if (p.getParent() != null) {
+                    Files.createDirectories(p.getParent());
+                }
+                Files.write(p, e.getValue());
+            }
+        }
+    }
+
+    private static byte[] innerJar(Path dir, boolean compress) throws IOException {
+        var inner = dir.resolve("inner-" + compress + ".jar");
+        writeJar(inner, compress, Map.of("a/b.txt", "hello".getBytes(StandardCharsets.UTF_8), "a/c/d.txt", new byte[0]));
+        return Files.readAllBytes(inner);
+    }
+
+    private static URI nested(Path outer, String... names) {
+        return URI.create("jar:" + outer.toUri() + "!/" + String.join("!/", names));
+    }
+
+    private static List<String> list(Path dir) throws IOException {
+        try (var list = Files.list(dir)) {
+            return list.map(p -> p.getFileName().toString()).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static void testContents(URI location) throws IOException {
+        try (var fs = ModuleFileSystem.create(MODULE, Map.of("location", location))) {
+            Assertions.assertEquals("nested", fs.stats().getBackend());
+            Assertions.assertEquals("hello", Files.readString(fs.getPath("a/b.txt")));
+            Assertions.assertEquals(5, Files.size(fs.getPath("a/b.txt")));
+            Assertions.assertEquals(List.of("b.txt", "c"), list(fs.getPath("a")));
+            Assertions.assertTrue(Files.isDirectory(fs.getPath("a/c")));
+            Assertions.assertFalse(Files.exists(fs.getPath("a/missing.txt")));
+            Assertions.assertFalse(Files.isWritable(fs.getPath("a/b.txt")));
+            Assertions.assertThrows(NoSuchFileException.class, () -> Files.readString(fs.getPath("a/missing.txt")));
+            Assertions.assertThrows(IOException.class, () -> Files.readString(fs.getPath("a/c")));
+        }
+    }
+
+    public void testStoredNestedJar() throws Exception {
+        withDir(dir -> {
+            var inner = innerJar(dir, false);
+            var mid = dir.resolve("mid.jar");
+            writeJar(mid, false, Map.of("inner.jar", inner));
+            var outer = dir.resolve("outer.jar");
+            writeJar(outer, false, Map.of("lib/inner.jar", inner, "lib/mid.jar", Files.readAllBytes(mid)));
+
+            testContents(nested(outer, "lib/inner.jar"));
+            testContents(nested(outer, "lib/mid.jar", "inner.jar"));
+
+            // Stored entries of stored jars are still a region of the outer file
+            try (var fs = ModuleFileSystem.create(MODULE, Map.of("location", nested(outer, "lib/mid.jar", "inner.jar")));
+                 var channel = FileChannel.open(fs.getPath("a/b.txt"))) {
+                ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 1, 3);
+                var bytes = new byte[3];
+                mapped.get(bytes);
+                Assertions.assertEquals("ell", new String(bytes, StandardCharsets.UTF_8));
+            }
+
+            Assertions.assertThrows(NoSuchFileException.class, () -> ModuleFileSystem.create(MODULE, Map.of(
+                    "location", nested(outer, "lib/missing.jar"))));
+        });
+    }
+
+    public void testDeflatedNestedJar() throws Exception {
+        withDir(dir -> {
+            var outer = dir.resolve("outer.jar");
+            writeJar(outer, true, Map.of("lib/inner.jar", innerJar(dir, true)));
+            var cache = dir.resolve("cache");
+            var previousCache = System.setProperty(CACHE_DIR_PROPERTY, cache.toString());
+            var previousIdle = System.setProperty(IDLE_PROPERTY, "0");
+            try {
+                testContents(nested(outer, "lib/inner.jar"));
+                var spilled = list(cache);
+                Assertions.assertEquals(2, spilled.size());
+                var jar = cache.resolve(spilled.get(0));
+                Assertions.assertEquals(spilled.get(0) + ".sha256", spilled.get(1));
+                var modified = Files.getLastModifiedTime(jar);
+
+                // The archive is opened again, but the inflated jar is reused
+                testContents(nested(outer, "lib/inner.jar"));
+                Assertions.assertEquals(spilled, list(cache));
+                Assertions.assertEquals(modified, Files.getLastModifiedTime(jar));
+
+                // A cached jar that doesn't match its digest is inflated again, even if it has the same size
+                var bytes = Files.readAllBytes(jar);
+                bytes[bytes.length / 2] ^= 1;
+                Files.write(jar, bytes);
+                testContents(nested(outer, "lib/inner.jar"));
+                try (var zip = FileSystems.newFileSystem(outer)) {
+                    Assertions.assertArrayEquals(Files.readAllBytes(zip.getPath("lib/inner.jar")), Files.readAllBytes(jar));
+                }
+
+                if (cache.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+                    // Files that others could have placed in the cache are never used
+                    Files.setPosixFilePermissions(cache, PosixFilePermissions.fromString("rwxrwxrwx"));
+                    Assertions.assertThrows(AccessDeniedException.class, () -> testContents(nested(outer, "lib/inner.jar")));
+                    Files.setPosixFilePermissions(cache, PosixFilePermissions.fromString("rwx------"));
+                }
+            } finally {
+                restore(CACHE_DIR_PROPERTY, previousCache);
+                restore(IDLE_PROPERTY, previousIdle);
+            }
+        });
+    }
+
+    private static void restore(String property, String value) {
+        if (value != null) {
+            System.setProperty(property, value);
+        } else {
+            System.clearProperty(property);
+        }
+    }
+}
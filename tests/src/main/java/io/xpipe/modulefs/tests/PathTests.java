@@ -0,0 +1,93 @@
+package io.xpipe.modulefs.tests;
+
+import io.xpipe.modulefs.ModuleFileSystem;
+import org.junit.jupiter.api.Assertions;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.stream.Collectors;
+
+public class PathTests {
+
+    private static final String MODULE = "module:/io.xpipe.modulefs.tests";
+
+    public void testPathEquality() throws IOException {
+        try (var fs = ModuleFileSystem.create(MODULE)) {
+            var p1 = fs.getPath("io/xpipe/modulefs/tests/test_resource.txt");
+            var p2 = fs.getPath("io", "xpipe", "modulefs/tests", "test_resource.txt");
+            var p3 = fs.getPath("io/xpipe/modulefs").resolve("tests/test_resource.txt");
+            Assertions.assertEquals(p1, p2);
+            Assertions.assertEquals(p1, p3);
+            Assertions.assertEquals(p1.hashCode(), p3.hashCode());
+            Assertions.assertEquals(p1, p1.getParent().resolve(p1.getFileName()));
+            Assertions.assertNotEquals(p1, p1.getParent());
+            Assertions.assertNotEquals(p1.getFileName(), p1);
+
+            var set = new HashSet<Path>();
+            set.add(p1);
+            Assertions.assertTrue(set.contains(p2));
+
+            try (var fs2 = ModuleFileSystem.create(MODULE)) {
+                Assertions.assertNotEquals(p1, fs2.getPath("io/xpipe/modulefs/tests/test_resource.txt"));
+            }
+        }
+    }
+
+    public void testPathStructure() throws IOException {
+        try (var fs = ModuleFileSystem.create(MODULE)) {
+            var p = fs.getPath("io/xpipe/modulefs/tests/test_resource.txt");
+            Assertions.assertTrue(p.isAbsolute());
+            Assertions.assertEquals("/io/xpipe/modulefs/tests/test_resource.txt", p.toString());
+            Assertions.assertEquals(5, p.getNameCount());
+            Assertions.assertEquals("test_resource.txt", p.getFileName().toString());
+            Assertions.assertFalse(p.getFileName().isAbsolute());
+            Assertions.assertEquals("xpipe", p.getName(1).toString());
+            Assertions.assertEquals("xpipe/modulefs", p.subpath(1, 3).toString());
+            Assertions.assertEquals(p.getRoot(), fs.getPath(""));
+            Assertions.assertNull(p.getRoot().getParent());
+            Assertions.assertNull(p.getRoot().getFileName());
+            Assertions.assertNull(p.getFileName().getRoot());
+
+            Assertions.assertTrue(p.startsWith(fs.getPath("io/xpipe")));
+            Assertions.assertTrue(p.startsWith("/io/xpipe"));
+            Assertions.assertFalse(p.startsWith("io/xpipe"));
+            Assertions.assertTrue(p.endsWith("tests/test_resource.txt"));
+            Assertions.assertFalse(p.endsWith("/tests/test_resource.txt"));
+
+            var names = new StringBuilder();
+            p.forEach(n -> names.append(n).append(';'));
+            Assertions.assertEquals("io;xpipe;modulefs;tests;test_resource.txt;", names.toString());
+        }
+    }
+
+    public void testPathOperations() throws IOException {
+        try (var fs = ModuleFileSystem.create(MODULE)) {
+            var dir = fs.getPath("io/xpipe/modulefs/tests");
+            var file = dir.resolve("test_resource.txt");
+            Assertions.assertEquals("test_resource.txt", dir.relativize(file).toString());
+            Assertions.assertEquals("..", file.relativize(dir).toString());
+            Assertions.assertEquals(file, dir.resolve(dir.relativize(file)));
+            Assertions.assertEquals(dir, fs.getPath("io/xpipe/./modulefs/other/../tests").normalize());
+            Assertions.assertEquals(fs.getPath(""), fs.getPath("../..").normalize());
+            Assertions.assertEquals(dir.resolve("empty_file.txt"), file.resolveSibling("empty_file.txt"));
+            Assertions.assertEquals(file, file.getFileName().toAbsolutePath().getFileName().toAbsolutePath().getRoot().resolve(file));
+
+            Assertions.assertSame(file.toUri(), file.toUri());
+            Assertions.assertEquals("resource", Files.readString(dir.getFileName().resolve("test_resource.txt")
+                    .toAbsolutePath().getRoot().resolve(file)));
+        }
+    }
+
+    public void testWalk() throws IOException {
+        try (var fs = ModuleFileSystem.create(MODULE)) {
+            var dir = fs.getPath("io/xpipe/modulefs");
+            try (var s = Files.walk(dir)) {
+                var files = s.map(dir::relativize).map(Path::toString).collect(Collectors.toSet());
+                Assertions.assertTrue(files.contains("tests/test_resource.txt"));
+                Assertions.assertTrue(files.contains("tests"));
+            }
+        }
+    }
+}
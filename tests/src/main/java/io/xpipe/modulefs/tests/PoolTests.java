@@ -0,0 +1,144 @@
+package io.xpipe.modulefs.tests;
+
+import io.xpipe.modulefs.ModuleFileSystem;
+import io.xpipe.modulefs.ModulePath;
+import org.junit.jupiter.api.Assertions;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+public class PoolTests {
+
+    private static final String IDLE_PROPERTY = "io.xpipe.modulefs.pool.idleMillis";
+
+    private interface JarTest {
+
+        void run(Path jar) throws Exception;
+    }
+
+    private static void withJar(String idleMillis, JarTest test) throws Exception {
+        var jar = Files.createTempDirectory("modulefs").resolve("pool.jar");
+        var previous = idleMillis != null ? System.setProperty(IDLE_PROPERTY, idleMillis) : System.clearProperty(IDLE_PROPERTY);
+        try {
+            writeJar(jar, "first");
+            test.run(jar);
+        } finally {
+            if (previous != null) {
+                System.setProperty(IDLE_PROPERTY, previous);
+            } else {
+                System.clearProperty(IDLE_PROPERTY);
+            }
+            Files.delete(jar);
+            Files.delete(jar.getParent());
+        }
+    }
+
+    private static void writeJar(Path jar, String content) throws IOException {
+        try (var zip = FileSystems.newFileSystem(jar, Map.of("create", "true"))) {
+            Files.writeString(zip.getPath("a.txt"), content);
+        }
+    }
+
+    private static ModuleFileSystem open(Path jar) throws IOException {
+        return ModuleFileSystem.create("module:/io.xpipe.modulefs.pool", Map.of("location", jar.toUri()));
+    }
+
+    private static FileSystem getBackend(ModuleFileSystem fs) {
+        return ((ModulePath) fs.getPath("a.txt")).getWrappedPath().getFileSystem();
+    }
+
+    private static void await(FileSystem backend, boolean gc) throws InterruptedException {
+        for (int i = 0; i < 100 && backend.isOpen(); i++) {
+            if (gc) {
+                System.gc();
+            }
+            Thread.sleep(50);
+        }
+        Assertions.assertFalse(backend.isOpen());
+    }
+
+    public void testUnpooledBackend() throws Exception {
+        withJar("0", jar -> {
+            FileSystem backend;
+            try (var fs = open(jar)) {
+                backend = getBackend(fs);
+            }
+            Assertions.assertFalse(backend.isOpen());
+        });
+    }
+
+    public void testDefaultPooledBackend() throws Exception {
+        withJar(null, jar -> {
+            FileSystem backend;
+            try (var fs = open(jar)) {
+                backend = getBackend(fs);
+            }
+            // Jars are pooled without any configuration
+            Assertions.assertTrue(backend.isOpen());
+            try (var fs = open(jar)) {
+                Assertions.assertSame(backend, getBackend(fs));
+            }
+        });
+    }
+
+    public void testWarmBackend() throws Exception {
+        withJar("30000", jar -> {
+            FileSystem backend;
+            try (var fs = open(jar)) {
+                backend = getBackend(fs);
+            }
+            // Reopening the module reuses the idle backend instead of scanning the jar again
+            Assertions.assertTrue(backend.isOpen());
+            try (var fs = open(jar)) {
+                Assertions.assertSame(backend, getBackend(fs));
+                Assertions.assertEquals("first", Files.readString(fs.getPath("a.txt")));
+            }
+        });
+    }
+
+    public void testStaleBackend() throws Exception {
+        withJar("30000", jar -> {
+            FileSystem backend;
+            try (var fs = open(jar)) {
+                backend = getBackend(fs);
+            }
+
+            Files.delete(jar);
+            writeJar(jar, "second content");
+            try (var fs = open(jar)) {
+                Assertions.assertNotSame(backend, getBackend(fs));
+                Assertions.assertEquals("second content", Files.readString(fs.getPath("a.txt")));
+            }
+            Assertions.assertFalse(backend.isOpen());
+        });
+    }
+
+    public void testIdleEviction() throws Exception {
+        withJar("50", jar -> {
+            FileSystem backend;
+            try (var fs = open(jar)) {
+                backend = getBackend(fs);
+            }
+            Assertions.assertTrue(backend.isOpen());
+            await(backend, false);
+        });
+    }
+
+    private static FileSystem openAndLeak(Path jar) throws IOException {
+        var fs = open(jar);
+        Assertions.assertEquals("first", Files.readString(fs.getPath("a.txt")));
+        return getBackend(fs);
+    }
+
+    public void testLeakedFileSystem() throws Exception {
+        withJar("0", jar -> {
+            // The unclosed module file system is reclaimed once it becomes unreachable
+            var backend = openAndLeak(jar);
+            await(backend, true);
+        });
+    }
+}
@@ -0,0 +1,89 @@
+package io.xpipe.modulefs.tests;
+
+import io.xpipe.modulefs.ModuleFileSystem;
+import org.junit.jupiter.api.Assertions;
+
+import java.io.IOException;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+public class ProfileTests {
+
+    private static final String MODULE = "module:/io.xpipe.modulefs.tests";
+
+    public void testRecordAndPreload() throws IOException {
+        var profile = Files.createTempFile("modulefs", ".profile");
+        try {
+            try (var fs = ModuleFileSystem.create(MODULE, Map.of("profile.record", profile))) {
+                Files.readString(fs.getPath("io/xpipe/modulefs/tests/test_resource.txt"));
+                Files.readAllBytes(fs.getPath("io/xpipe/modulefs/tests/CommonTests.class"));
+                Files.readString(fs.getPath("/io/xpipe/modulefs/tests/../tests/test_resource.txt"));
+                Files.exists(fs.getPath("io/xpipe/modulefs/tests/empty_file.txt"));
+            }
+
+            var lines = Files.readAllLines(profile);
+            Assertions.assertEquals(List.of(
+                    "io/xpipe/modulefs/tests/test_resource.txt",
+                    "io/xpipe/modulefs/tests/CommonTests.class"), lines.subList(1, lines.size()));
+
+            var env = Map.of("profile.preload", profile.toString(), "cache.maxBytes", 1024 * 1024);
+            try (var fs = ModuleFileSystem.create(MODULE, env)) {
+                fs.getPreload().join();
+                Assertions.assertEquals(2, fs.getCacheStats().orElseThrow().getEntryCount());
+                Assertions.assertEquals("resource", Files.readString(fs.getPath("io/xpipe/modulefs/tests/test_resource.txt")));
+                Assertions.assertEquals(1, fs.getCacheStats().orElseThrow().getHitCount());
+            }
+        } finally {
+            Files.delete(profile);
+        }
+    }
+
+    public void testPreloadMissingProfile() throws IOException {
+        var profile = Files.createTempDirectory("modulefs").resolve("missing.profile");
+        try (var fs = ModuleFileSystem.create(MODULE, Map.of("profile.preload", profile))) {
+            Assertions.assertTrue(fs.getPreload().isDone());
+            Assertions.assertEquals("resource", Files.readString(fs.getPath("io/xpipe/modulefs/tests/test_resource.txt")));
+        }
+        Files.delete(profile.getParent());
+    }
+
+    public void testRecordAsynchronousOpen() throws IOException {
+        var profile = Files.createTempFile("modulefs", ".profile");
+        try {
+            try (var fs = ModuleFileSystem.create(MODULE, Map.of("profile.record", profile))) {
+                AsynchronousFileChannel.open(fs.getPath("io/xpipe/modulefs/tests/test_resource.txt"), StandardOpenOption.READ).close();
+            }
+
+            var lines = Files.readAllLines(profile);
+            Assertions.assertEquals(List.of("io/xpipe/modulefs/tests/test_resource.txt"), lines.subList(1, lines.size()));
+        } finally {
+            Files.delete(profile);
+        }
+    }
+
+    /**
+     * Runs in a separate JVM, which exits without closing the file system.
+     */
+    public static final class UnclosedRecording {
+
+        public static void main(String[] args) throws IOException {
+            var fs = ModuleFileSystem.create(MODULE, Map.of("profile.record", System.getProperty("io.xpipe.modulefs.tests.profile")));
+            Files.readString(fs.getPath("io/xpipe/modulefs/tests/test_resource.txt"));
+        }
+    }
+
+    public void testRecordWithoutClose() throws Exception {
+        var profile = Files.createTempDirectory("modulefs").resolve("unclosed.profile");
+        try {
+            CommonTests.runSeparately(UnclosedRecording.class, "io.xpipe.modulefs.tests.profile=" + profile);
+            var lines = Files.readAllLines(profile);
+            Assertions.assertEquals(List.of("io/xpipe/modulefs/tests/test_resource.txt"), lines.subList(1, lines.size()));
+        } finally {
+            Files.deleteIfExists(profile);
+            Files.delete(profile.getParent());
+        }
+    }
+}
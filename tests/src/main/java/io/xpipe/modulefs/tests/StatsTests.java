@@ -0,0 +1,86 @@
+package io.xpipe.modulefs.tests;
+
+import io.xpipe.modulefs.FileSystemStats;
+import io.xpipe.modulefs.ModuleFileSystem;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Assertions;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+public class StatsTests {
+
+    private static final String MODULE = "module:/io.xpipe.modulefs.tests";
+
+    public void testStats() throws IOException {
+        for (var env : Backends.of(MODULE, Map.of())) {
+            try (var fs = ModuleFileSystem.create(MODULE, env)) {
+                var dir = fs.getPath("io/xpipe/modulefs/tests");
+                Files.readString(dir.resolve("test_resource.txt"));
+                Files.readString(dir.resolve("test_resource.txt"));
+                Files.readAllBytes(dir.resolve("empty_file.txt"));
+                Assertions.assertThrows(IOException.class, () -> Files.readString(dir.resolve("missing.txt")));
+                try (var list = Files.list(dir)) {
+                    list.count();
+                }
+
+                var stats = fs.stats();
+                Assertions.assertEquals("io.xpipe.modulefs.tests", stats.getModule());
+                Assertions.assertNotNull(stats.getBackend());
+                Assertions.assertEquals(1, stats.getCount(FileSystemStats.Operation.RESOLVE));
+                Assertions.assertEquals(1, stats.getCount(FileSystemStats.Operation.OPEN));
+                Assertions.assertEquals(4, stats.getCount(FileSystemStats.Operation.READ));
+                Assertions.assertEquals(1, stats.getCount(FileSystemStats.Operation.LIST));
+
+                var reads = stats.getReadNanos();
+                Assertions.assertTrue(reads.containsKey("io/xpipe/modulefs/tests/test_resource.txt"));
+                Assertions.assertTrue(reads.containsKey("io/xpipe/modulefs/tests/missing.txt"));
+                Assertions.assertEquals(3, reads.size());
+
+                var latencies = stats.getLatencies(FileSystemStats.Operation.READ);
+                Assertions.assertTrue(latencies.getPercentileNanos(50) <= latencies.getPercentileNanos(100));
+                Assertions.assertTrue(latencies.getPercentileNanos(100) <= latencies.getMaxNanos());
+                Assertions.assertTrue(latencies.getTotalNanos() >= latencies.getMaxNanos());
+            }
+        }
+    }
+
+    public void testFlightRecorderEvents() throws IOException {
+        var file = Files.createTempFile("modulefs", ".jfr");
+        try {
+            try (var recording = new Recording()) {
+                for (var name : new String[] {"Resolve", "Open", "Read", "List"}) {
+                    recording.enable("io.xpipe.modulefs." + name).withThreshold(Duration.ZERO);
+                }
+                recording.start();
+                try (var fs = ModuleFileSystem.create(MODULE)) {
+                    var dir = fs.getPath("io/xpipe/modulefs/tests");
+                    Files.readString(dir.resolve("test_resource.txt"));
+                    try (var list = Files.list(dir)) {
+                        list.count();
+                    }
+                }
+                recording.stop();
+                recording.dump(file);
+            }
+
+            var events = RecordingFile.readAllEvents(file).stream()
+                    .filter(e -> e.getEventType().getName().startsWith("io.xpipe.modulefs."))
+                    .collect(Collectors.groupingBy(e -> e.getEventType().getName()));
+            Assertions.assertEquals(1, events.get("io.xpipe.modulefs.Resolve").size());
+            Assertions.assertEquals(1, events.get("io.xpipe.modulefs.Open").size());
+            Assertions.assertEquals(1, events.get("io.xpipe.modulefs.List").size());
+            RecordedEvent read = events.get("io.xpipe.modulefs.Read").get(0);
+            Assertions.assertEquals("io.xpipe.modulefs.tests", read.getString("module"));
+            Assertions.assertEquals("io/xpipe/modulefs/tests/test_resource.txt", read.getString("path"));
+            Assertions.assertNotNull(read.getString("backend"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package io.xpipe.modulefs.tests;
+
+import io.xpipe.modulefs.ModuleFileSystem;
+import io.xpipe.modulefs.ModuleFiles;
+import io.xpipe.modulefs.ModulePath;
+import org.junit.jupiter.api.Assertions;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+public class WalkTests {
+
+    private static final String MODULE = "module:/io.xpipe.modulefs.tests";
+
+    public void testParallelWalk() throws IOException {
+        try (var fs = ModuleFileSystem.create(MODULE)) {
+            var root = (ModulePath) fs.getPath("io");
+            List<Path> expected;
+            try (var walk = Files.walk(root)) {
+                expected = walk.sorted().collect(Collectors.toList());
+            }
+
+            var visited = new ConcurrentLinkedQueue<Path>();
+            var postVisited = ConcurrentHashMap.<Path>newKeySet();
+            ModuleFiles.walkParallel(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    visited.add(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    visited.add(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
+                    try (var list = Files.list(dir)) {
+                        Assertions.assertTrue(list.allMatch(visited::contains));
+                    } catch (IOException e) {
+                        throw new AssertionError(e);
+                    }
+                    postVisited.add(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+            }, 4);
+            Assertions.assertEquals(expected, visited.stream().sorted().collect(Collectors.toList()));
+            Assertions.assertTrue(postVisited.contains(root));
+        }
+    }
+
+    public void testParallelWalkTerminate() throws IOException {
+        try (var fs = ModuleFileSystem.create(MODULE)) {
+            var root = (ModulePath) fs.getPath("io");
+            var visited = ConcurrentHashMap.<Path>newKeySet();
+            ModuleFiles.walkParallel(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    visited.add(dir);
+                    return dir.equals(root) ? FileVisitResult.CONTINUE : FileVisitResult.TERMINATE;
+                }
+            }, 2);
+            Assertions.assertEquals(2, visited.size());
+        }
+    }
+
+    public void testParallelWalkFailure() throws Exception {
+        try (var fs = ModuleFileSystem.create(MODULE)) {
+            var root = (ModulePath) fs.getPath("io");
+            var visits = new AtomicInteger();
+            Assertions.assertThrows(IOException.class, () -> ModuleFiles.walkParallel(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    visits.incrementAndGet();
+                    throw new IOException("Failed " + file);
+                }
+            }, 4));
+
+            // Sibling tasks have stopped before the walk returned
+            int count = visits.get();
+            Thread.sleep(100);
+            Assertions.assertEquals(count, visits.get());
+        }
+    }
+
+    public void testLinkCycle() throws IOException {
+        var dir = Files.createTempDirectory("modulefs");
+        try {
+            Files.createDirectories(dir.resolve("a"));
+            Files.writeString(dir.resolve("a/b.txt"), "b");
+            try {
+                Files.createSymbolicLink(dir.resolve("a/loop"), dir);
+            } catch (UnsupportedOperationException | FileSystemException e) {
+                return;
+            }
+
+            try (var fs = ModuleFileSystem.create(MODULE, Map.of("location", dir.toUri()))) {
+                var root = (ModulePath) fs.getPath("");
+                var expected = List.of(fs.getPath(""), fs.getPath("a"), fs.getPath("a/b.txt"), fs.getPath("a/loop"));
+                Assertions.assertEquals(expected, ModuleFiles.stream(root).sorted().collect(Collectors.toList()));
+
+                var visited = new ConcurrentLinkedQueue<Path>();
+                ModuleFiles.walkParallel(root, new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        visited.add(file);
+                        return FileVisitResult.CONTINUE;
+                    }
+                }, 2);
+                Assertions.assertEquals(expected.subList(2, 4), visited.stream().sorted().collect(Collectors.toList()));
+            }
+        } finally {
+            Files.deleteIfExists(dir.resolve("a/loop"));
+            Files.deleteIfExists(dir.resolve("a/b.txt"));
+            Files.delete(dir.resolve("a"));
+            Files.delete(dir);
+        }
+    }
+
+    public void testStream() throws IOException {
+        try (var fs = ModuleFileSystem.create(MODULE)) {
+            var root = (ModulePath) fs.getPath("io");
+            List<Path> expected;
+            try (var walk = Files.walk(root)) {
+                expected = walk.sorted().collect(Collectors.toList());
+            }
+
+            var sequential = ModuleFiles.stream(root).collect(Collectors.toList());
+            Assertions.assertEquals(root, sequential.get(0));
+            Assertions.assertEquals(expected, sequential.stream().sorted().collect(Collectors.toList()));
+
+            var parallel = ModuleFiles.stream(root).parallel().sorted().collect(Collectors.toList());
+            Assertions.assertEquals(expected, parallel);
+
+            var file = (ModulePath) fs.getPath("io/xpipe/modulefs/tests/test_resource.txt");
+            Assertions.assertEquals(1, ModuleFiles.stream(file).parallel().count());
+        }
+    }
+
+    public void testListedAttributes() throws IOException {
+        var envs = new ArrayList<Map<String, Object>>();
+        envs.addAll(Backends.of(MODULE, Map.of()));
+        envs.addAll(Backends.of(MODULE, Map.of("index", true)));
+        for (var env : envs) {
+            try (var fs = ModuleFileSystem.create(MODULE, env)) {
+                var sizes = new HashMap<String, Long>();
+                ModuleFiles.walkParallel((ModulePath) fs.getPath("io"), new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        synchronized (sizes) {
+                            sizes.put(file.getFileName().toString(), attrs.size());
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                }, 2);
+                Assertions.assertEquals(8, sizes.get("test_resource.txt"));
+                Assertions.assertEquals(0, sizes.get("empty_file.txt"));
+            }
+        }
+    }
+
+    public void testListedPathsReadCurrentAttributes() throws IOException {
+        var dir = Files.createTempDirectory("modulefs");
+        try {
+            Files.writeString(dir.resolve("a.txt"), "first");
+            try (var fs = ModuleFileSystem.create(MODULE, Map.of("location", dir.toUri()))) {
+                List<Path> listed;
+                try (var list = Files.list(fs.getPath(""))) {
+                    listed = list.collect(Collectors.toList());
+                }
+                Assertions.assertEquals(1, listed.size());
+
+                // Attributes that were known when listing are never returned for a later lookup
+                Files.writeString(dir.resolve("a.txt"), "changed");
+                Assertions.assertEquals(7, Files.size(listed.get(0)));
+                Assertions.assertEquals(7, Files.readAttributes(listed.get(0), BasicFileAttributes.class).size());
+            }
+        } finally {
+            Files.deleteIfExists(dir.resolve("a.txt"));
+            Files.delete(dir);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package io.xpipe.modulefs.tests;
+
+import io.xpipe.modulefs.ModuleFileSystem;
+import org.junit.jupiter.api.Assertions;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
+
+public class WatchTests {
+
+    private static void await(Callable<Boolean> condition) throws Exception {
+        for (int i = 0; i < 100 && !condition.call(); i++) {
+            Thread.sleep(50);
+        }
+        Assertions.assertTrue(condition.call());
+    }
+
+    private static List<String> list(Path dir) throws IOException {
+        try (var list = Files.list(dir)) {
+            return list.map(p -> p.getFileName().toString()).sorted().collect(Collectors.toList());
+        }
+    }
+
+    public void testWatchedChanges() throws Exception {
+        var dir = Files.createTempDirectory("modulefs");
+        try {
+            Files.writeString(dir.resolve("a.txt"), "first");
+            Files.writeString(dir.resolve("b.txt"), "unchanged");
+            var env = Map.of("location", dir.toUri(), "index", true, "cache.maxBytes", 1 << 20, "watch", true, "watch.debounceMillis", 20);
+            try (var fs = ModuleFileSystem.create("module:/io.xpipe.modulefs.watch", env)) {
+                Assertions.assertEquals("first", Files.readString(fs.getPath("a.txt")));
+                Assertions.assertEquals("unchanged", Files.readString(fs.getPath("b.txt")));
+
+                Files.writeString(dir.resolve("a.txt"), "second");
+                await(() -> Files.readString(fs.getPath("a.txt")).equals("second"));
+                Assertions.assertEquals(6, Files.size(fs.getPath("a.txt")));
+
+                Files.writeString(dir.resolve("c.txt"), "created");
+                await(() -> Files.exists(fs.getPath("c.txt")));
+                Assertions.assertEquals("created", Files.readString(fs.getPath("c.txt")));
+
+                Files.createDirectories(dir.resolve("d/e"));
+                Files.writeString(dir.resolve("d/e/f.txt"), "nested");
+                await(() -> Files.exists(fs.getPath("d/e/f.txt")));
+                Assertions.assertEquals(List.of("e"), list(fs.getPath("d")));
+
+                Files.delete(dir.resolve("a.txt"));
+                await(() -> !Files.exists(fs.getPath("a.txt")));
+                Assertions.assertEquals(List.of("b.txt", "c.txt", "d"), list(fs.getPath("")));
+                Assertions.assertEquals("unchanged", Files.readString(fs.getPath("b.txt")));
+            }
+        } finally {
+            try (var walk = Files.walk(dir)) {
+                for (var p : (Iterable<Path>) walk.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(p);
+                }
+            }
+        }
+    }
+}
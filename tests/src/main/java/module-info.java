@@ -1,5 +1,6 @@
 module io.xpipe.modulefs.tests {
     exports io.xpipe.modulefs.tests;
     requires io.xpipe.modulefs;
+    requires jdk.jfr;
     requires org.junit.jupiter.api;
 }
\ No newline at end of file